@@ -0,0 +1,53 @@
+package chesslib.bench;
+
+import chesslib.Position;
+import chesslib.move.MoveList;
+import chesslib.test.PerftTest;
+
+import java.util.List;
+
+/**
+ * The fixed set of positions every benchmark runs on.
+ * It is the (de-duplicated) {@link PerftTest#FENS} list, so benchmark numbers and perft verification
+ * always talk about the same positions.
+ */
+public final class Corpus {
+    /** Distinct FENs of {@link PerftTest#FENS}, in their original order. */
+    public static final List<String> FENS = PerftTest.FENS.stream().distinct().toList();
+
+    private Corpus() {
+    }
+
+    /**
+     * Creates a fresh position for every FEN of the corpus.
+     *
+     * @return array of positions, index-aligned with {@link #FENS}
+     */
+    public static Position[] positions() {
+        Position[] result = new Position[FENS.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = new Position(FENS.get(i));
+        }
+        return result;
+    }
+
+    /**
+     * Collects the legal moves of every position, so the measured code does not include move generation.
+     *
+     * @param positions the corpus positions
+     * @return legal moves of each position, index-aligned with {@code positions}
+     */
+    public static int[][] legalMoves(Position[] positions) {
+        int[][] result = new int[positions.length][];
+        for (int i = 0; i < positions.length; i++) {
+            MoveList moveList = new MoveList(positions[i]);
+            int[] moves = new int[moveList.size()];
+            int index = 0;
+            for (int move : moveList) {
+                moves[index++] = move;
+            }
+            result[i] = moves;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,114 @@
+package chesslib.bench;
+
+import chesslib.GameManager;
+import chesslib.move.Move;
+import chesslib.types.GameStatus;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for the {@link GameManager} API layer: SAN in/out and game status.
+ * One operation works on one corpus position; consecutive operations cycle through the whole corpus.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class GameManagerBenchmark {
+    private GameManager[] managers;
+    private Move[][] moves;
+    private String[][] sans;
+    private GameManager shuffling;
+    private Move repeatingMove;
+    private int cursor;
+
+    @Setup
+    public void setup() {
+        List<String> fens = Corpus.FENS;
+        managers = new GameManager[fens.size()];
+        moves = new Move[fens.size()][];
+        sans = new String[fens.size()][];
+
+        for (int i = 0; i < managers.length; i++) {
+            GameManager gm = new GameManager(fens.get(i));
+            managers[i] = gm;
+            moves[i] = gm.getAllLegalMoves().toArray(new Move[0]);
+            sans[i] = new String[moves[i].length];
+            for (int k = 0; k < moves[i].length; k++) {
+                sans[i][k] = gm.toSan(moves[i][k]);
+            }
+        }
+
+        // a rook ending where both sides shuffle for 46 moves, so the repetition is verified over a long history
+        shuffling = new GameManager("4k3/8/8/8/8/8/8/R3K3 w - - 0 1");
+        for (int cycle = 0; cycle < 23; cycle++) {
+            for (String san : new String[]{"Ra2", "Kd8", "Ra1", "Ke8"}) {
+                shuffling.makeMove(shuffling.parseSan(san));
+            }
+        }
+        repeatingMove = shuffling.lastMove();
+        shuffling.undoMove();
+    }
+
+    private int next() {
+        int index = cursor;
+        cursor = index + 1 == managers.length ? 0 : index + 1;
+        return index;
+    }
+
+    /**
+     * Converts every legal move of one position to SAN.
+     */
+    @Benchmark
+    public int toSan() {
+        int index = next();
+        int length = 0;
+        for (Move move : moves[index]) {
+            length += managers[index].toSan(move).length();
+        }
+        return length;
+    }
+
+    /**
+     * Parses the SAN of every legal move of one position.
+     */
+    @Benchmark
+    public int parseSan() {
+        int index = next();
+        int found = 0;
+        for (String san : sans[index]) {
+            if (managers[index].parseSan(san) != null)
+                found++;
+        }
+        return found;
+    }
+
+    /**
+     * Game status right after a move. GameManager caches the status until the position changes,
+     * so the move is made and undone around the query to measure a real evaluation.
+     */
+    @Benchmark
+    public GameStatus gameStatus() {
+        int index = next();
+        GameManager gm = managers[index];
+        gm.makeMove(moves[index][0]);
+        GameStatus status = gm.gameStatus();
+        gm.undoMove();
+        return status;
+    }
+
+    /**
+     * Game status after a move that repeats the position, which verifies the repetition over the whole history.
+     */
+    @Benchmark
+    public GameStatus gameStatusRepetition() {
+        shuffling.makeMove(repeatingMove);
+        GameStatus status = shuffling.gameStatus();
+        shuffling.undoMove();
+        return status;
+    }
+}
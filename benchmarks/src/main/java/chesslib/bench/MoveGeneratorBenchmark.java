@@ -0,0 +1,150 @@
+package chesslib.bench;
+
+import chesslib.Position;
+import chesslib.move.MoveGenerator;
+import chesslib.move.MoveList;
+import chesslib.move.MoveListInterface;
+import chesslib.move.MovePicker;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for {@link MoveGenerator}: full and staged legal generation, move counting, the legal-move existence check and perft.
+ * One operation works on one corpus position; consecutive operations cycle through the whole corpus.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class MoveGeneratorBenchmark {
+    private Position[] positions;
+    private final MoveList reusedList = new MoveList();
+    private int cursor;
+
+    @Setup
+    public void setup() {
+        positions = Corpus.positions();
+    }
+
+    private Position next() {
+        int index = cursor;
+        cursor = index + 1 == positions.length ? 0 : index + 1;
+        return positions[index];
+    }
+
+    @Benchmark
+    public int createAll() {
+        MoveList moveList = new MoveList();
+        MoveGenerator.createAll(next(), moveList);
+        return moveList.size();
+    }
+
+    @Benchmark
+    public int createAllReused() {
+        return reusedList.generate(next()).size();
+    }
+
+    @Benchmark
+    public int createCaptures() {
+        MoveList moveList = reusedList;
+        moveList.clear();
+        MoveGenerator.createCaptures(next(), moveList);
+        return moveList.size();
+    }
+
+    /**
+     * Pulls only the first move from a staged picker, the best case of a search that cuts off immediately.
+     */
+    @Benchmark
+    public int movePickerFirst() {
+        return new MovePicker(next()).next();
+    }
+
+    /**
+     * Sums the moves through the boxing {@code Iterable<Integer>} view, as a baseline for {@link #sumIndexed()}.
+     */
+    @Benchmark
+    public int sumIterator() {
+        int sum = 0;
+        for (int move : reusedList.generate(next())) {
+            sum += move;
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public int sumIndexed() {
+        MoveList moveList = reusedList.generate(next());
+        int sum = 0;
+        for (int i = 0; i < moveList.size(); i++) {
+            sum += moveList.get(i);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public int countLegalMoves() {
+        return MoveGenerator.countLegalMoves(next());
+    }
+
+    @Benchmark
+    public boolean hasAnyLegalMove() {
+        return MoveGenerator.hasAnyLegalMove(next());
+    }
+
+    /**
+     * The former existence check, as a baseline for {@link #hasAnyLegalMove()}:
+     * generates moves into a list that throws a preallocated exception on the first added move.
+     */
+    @Benchmark
+    public boolean hasAnyLegalMoveByException() {
+        try {
+            MoveGenerator.createAll(next(), SHORT_CIRCUIT_LIST);
+            return false;
+        } catch (EarlyExit e) {
+            return true;
+        }
+    }
+
+    private static final EarlyExit EARLY_EXIT = new EarlyExit();
+    private static final MoveListInterface SHORT_CIRCUIT_LIST = new MoveListInterface() {
+        @Override
+        public Iterator<Integer> iterator() {
+            throw new UnsupportedOperationException("Iteration not supported");
+        }
+
+        @Override
+        public int size() {
+            return 0;
+        }
+
+        @Override
+        public void add(int move) {
+            throw EARLY_EXIT;
+        }
+    };
+
+    private static class EarlyExit extends RuntimeException {
+        private EarlyExit() {
+            super(null, null, false, false);
+        }
+    }
+
+    /**
+     * Perft node count at a fixed depth.
+     */
+    @State(Scope.Thread)
+    public static class PerftState {
+        @Param({"1", "2", "3"})
+        public int depth;
+    }
+
+    @Benchmark
+    public long numMoves(PerftState perft) {
+        return MoveGenerator.numMoves(next(), perft.depth);
+    }
+}
@@ -0,0 +1,67 @@
+package chesslib.bench;
+
+import chesslib.Position;
+import chesslib.move.MoveGenerator;
+import chesslib.move.PerftHashTable;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deep perft on single positions: sequential, fork/join, and both with a perft hash table.
+ * Run with different {@code -XX:ActiveProcessorCount} / pool sizes to see the scaling.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PerftBenchmark {
+    @Param({
+            "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1", // Kiwipete
+            "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1"
+    })
+    public String fen;
+
+    @Param({"5"})
+    public int depth;
+
+    @Param({"64"})
+    public int hashMb;
+
+    private Position position;
+    private PerftHashTable table;
+
+    @Setup
+    public void setup() {
+        position = new Position(fen);
+        table = new PerftHashTable(hashMb);
+    }
+
+    // every invocation starts from an empty table, otherwise the later invocations would just read the root
+    @Setup(Level.Invocation)
+    public void clearTable() {
+        table.clear();
+    }
+
+    @Benchmark
+    public long sequential() {
+        return MoveGenerator.numMoves(position, depth);
+    }
+
+    @Benchmark
+    public long parallel() {
+        return MoveGenerator.parallelNumMoves(position, depth);
+    }
+
+    @Benchmark
+    public long sequentialHashed() {
+        return MoveGenerator.numMoves(position, depth, table);
+    }
+
+    @Benchmark
+    public long parallelHashed() {
+        return MoveGenerator.parallelNumMoves(position, depth, table);
+    }
+}
@@ -0,0 +1,88 @@
+package chesslib.bench;
+
+import chesslib.Position;
+import chesslib.batch.PositionBatch;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+import static chesslib.types.Side.Value.WHITE;
+
+/**
+ * {@link PositionBatch} over the whole corpus (repeated to fill the batch): the Vector API kernels, the scalar
+ * kernels ({@code -Dchesslib.batchVector=false}), and the same results one {@link Position} at a time.
+ * The primary score is batches per second; every operation covers {@link #BATCH_SIZE} positions.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+@State(Scope.Thread)
+public class PositionBatchBenchmark {
+    public static final int BATCH_SIZE = 1024;
+
+    private Position[] positions;
+    private PositionBatch batch;
+    private final long[] attacks = new long[BATCH_SIZE];
+    private final boolean[] checks = new boolean[BATCH_SIZE];
+    private final int[] mobility = new int[BATCH_SIZE];
+
+    @Setup
+    public void setup() {
+        Position[] corpus = Corpus.positions();
+        positions = new Position[BATCH_SIZE];
+        batch = new PositionBatch(BATCH_SIZE);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            positions[i] = corpus[i % corpus.length];
+            batch.add(positions[i]);
+        }
+        boolean scalar = "false".equals(System.getProperty("chesslib.batchVector"));
+        if (PositionBatch.isVectorized() == scalar)
+            throw new IllegalStateException("Expected the " + (scalar ? "scalar" : "vector") + " batch kernels");
+    }
+
+    @Benchmark
+    public long[] attacksVector() {
+        batch.attacks(WHITE, attacks);
+        return attacks;
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = {"--add-modules=jdk.incubator.vector", "-Dchesslib.batchVector=false"})
+    public long[] attacksScalar() {
+        batch.attacks(WHITE, attacks);
+        return attacks;
+    }
+
+    @Benchmark
+    public long[] attacksPerPosition() {
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            Position pos = positions[i];
+            attacks[i] = pos.attacksBySide(WHITE, pos.occupancy());
+        }
+        return attacks;
+    }
+
+    @Benchmark
+    public boolean[] inCheckVector() {
+        batch.inCheck(checks);
+        return checks;
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = {"--add-modules=jdk.incubator.vector", "-Dchesslib.batchVector=false"})
+    public boolean[] inCheckScalar() {
+        batch.inCheck(checks);
+        return checks;
+    }
+
+    /**
+     * Mobility has no vector kernel (see {@link PositionBatch#mobility}), so one fork covers it.
+     */
+    @Benchmark
+    public int[] mobility() {
+        batch.mobility(WHITE, mobility);
+        return mobility;
+    }
+}
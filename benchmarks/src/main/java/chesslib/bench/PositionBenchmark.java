@@ -0,0 +1,199 @@
+package chesslib.bench;
+
+import chesslib.Bitboard;
+import chesslib.FenValidation;
+import chesslib.Position;
+import chesslib.PositionCodec;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+import static chesslib.types.PieceType.Value.PAWN;
+import static chesslib.types.Side.Value.BLACK;
+import static chesslib.types.Side.Value.WHITE;
+
+/**
+ * Benchmarks for the {@link Position} hot paths: make/undo, FEN in/out and the move queries (check, SEE).
+ * One operation works on one corpus position; consecutive operations cycle through the whole corpus.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class PositionBenchmark {
+    private Position[] positions;
+    private int[][] moves;
+    private String[] fens;
+    private long[][] encoded;
+    private final long[] encodeBuffer = new long[PositionCodec.LONGS];
+    private final char[] fenBuffer = new char[Position.MAX_FEN_LENGTH];
+    private Position target;
+    private int cursor;
+
+    @Setup
+    public void setup() {
+        positions = Corpus.positions();
+        moves = Corpus.legalMoves(positions);
+        fens = Corpus.FENS.toArray(new String[0]);
+        encoded = new long[positions.length][];
+        for (int i = 0; i < positions.length; i++) {
+            encoded[i] = PositionCodec.encode(positions[i]);
+        }
+        target = new Position(fens[0]);
+    }
+
+    private int next() {
+        int index = cursor;
+        cursor = index + 1 == positions.length ? 0 : index + 1;
+        return index;
+    }
+
+    /**
+     * Makes and undoes every legal move of one position.
+     */
+    @Benchmark
+    public long makeUndoAllMoves() {
+        int index = next();
+        Position pos = positions[index];
+        long keys = 0;
+        for (int move : moves[index]) {
+            pos.makeMove(move);
+            keys ^= pos.getState().key;
+            pos.undoMove();
+        }
+        return keys;
+    }
+
+    /**
+     * {@link #makeUndoAllMoves()} with the 128-bit keys on; the difference is the cost of maintaining the high key.
+     */
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = "-Dchesslib.wideKeys=true")
+    public long makeUndoAllMovesWideKeys() {
+        int index = next();
+        Position pos = positions[index];
+        long keys = 0;
+        for (int move : moves[index]) {
+            pos.makeMove(move);
+            keys ^= pos.getState().key ^ pos.getState().keyHigh;
+            pos.undoMove();
+        }
+        return keys;
+    }
+
+    /**
+     * Asks every legal move of one position whether it gives check, without playing it.
+     * Compare with {@link #makeUndoAllMoves()}, the cost of the old make/inCheck/undo test.
+     */
+    @Benchmark
+    public int givesCheckAllMoves() {
+        int index = next();
+        Position pos = positions[index];
+        int checks = 0;
+        for (int move : moves[index]) {
+            if (pos.givesCheck(move))
+                ++checks;
+        }
+        return checks;
+    }
+
+    @Benchmark
+    public int seeAllMoves() {
+        int index = next();
+        Position pos = positions[index];
+        int sum = 0;
+        for (int move : moves[index]) {
+            sum += pos.see(move);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public int seeGreaterOrEqualAllMoves() {
+        int index = next();
+        Position pos = positions[index];
+        int good = 0;
+        for (int move : moves[index]) {
+            if (pos.seeGreaterOrEqual(move, 0))
+                ++good;
+        }
+        return good;
+    }
+
+    @Benchmark
+    public long hangingPieces() {
+        Position pos = positions[next()];
+        return pos.hangingPieces(WHITE) | pos.hangingPieces(BLACK);
+    }
+
+    /**
+     * The set-wise pawn structure queries of {@link Bitboard} for both sides of one position.
+     */
+    @Benchmark
+    public long pawnStructure() {
+        Position pos = positions[next()];
+        long white = pos.occupancyBySideAndType(WHITE, PAWN);
+        long black = pos.occupancyBySideAndType(BLACK, PAWN);
+        return Bitboard.passedPawns(white, black) ^ Bitboard.isolatedPawns(white, black)
+                ^ Bitboard.doubledPawns(white, black) ^ Bitboard.backwardPawns(white, black)
+                ^ Bitboard.openFiles(white, black);
+    }
+
+    @Benchmark
+    public void setFen(Blackhole bh) {
+        target.setFen(fens[next()]);
+        bh.consume(target);
+    }
+
+    @Benchmark
+    public boolean validateFen() {
+        return FenValidation.isValidFenSyntax(fens[next()]);
+    }
+
+    /**
+     * Cached after the first call on each position, so this measures repeated reads of the same position.
+     */
+    @Benchmark
+    public String getFen() {
+        return positions[next()].getFen();
+    }
+
+    /**
+     * Writes the FEN without the cache, the cost of the first read after a move.
+     */
+    @Benchmark
+    public int writeFen() {
+        return positions[next()].writeFen(fenBuffer);
+    }
+
+    /**
+     * The old way of getting an independent position, as a baseline for {@link #copy()}.
+     */
+    @Benchmark
+    public Position fenRoundTrip() {
+        return new Position(positions[next()].getFen());
+    }
+
+    @Benchmark
+    public long[] encode() {
+        PositionCodec.encode(positions[next()], encodeBuffer, 0);
+        return encodeBuffer;
+    }
+
+    /**
+     * Decodes into a reused position; compare with {@link #setFen(Blackhole)}.
+     */
+    @Benchmark
+    public void decode(Blackhole bh) {
+        PositionCodec.decode(encoded[next()], 0, target);
+        bh.consume(target);
+    }
+
+    @Benchmark
+    public Position copy() {
+        return positions[next()].copy();
+    }
+}
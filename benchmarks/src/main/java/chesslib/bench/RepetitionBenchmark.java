@@ -0,0 +1,161 @@
+package chesslib.bench;
+
+import chesslib.Position;
+import chesslib.RepetitionTracker;
+import chesslib.move.MoveGenerator;
+import chesslib.move.MoveList;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the {@link RepetitionTracker} implementations: the ring of recent keys (the default) and the
+ * 4 KB counter table. Run with the GC profiler of {@link BenchmarkRunner} to see the allocation of a setup
+ * ({@link #newPosition()}) and of a whole game ({@link #newGame()}).
+ * Also measures the upcoming repetition test along the same lines.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class RepetitionBenchmark {
+    // plies of the recorded line of every corpus position
+    private static final int LINE_PLIES = 120;
+
+    @Param({"ring", "table"})
+    public String tracker;
+
+    private Position[] positions;
+    private int[][] lines;
+    private int cursor;
+
+    @Setup
+    public void setup() {
+        positions = new Position[Corpus.FENS.size()];
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = new Position(Corpus.FENS.get(i), newTracker());
+        }
+        lines = recordLines(positions);
+    }
+
+    private RepetitionTracker newTracker() {
+        return "table".equals(tracker) ? RepetitionTracker.table() : RepetitionTracker.ring();
+    }
+
+    /**
+     * Records a random line from every position that mostly shuffles back and forth, so it has long
+     * rule-50 windows and many repetitions (a drawish endgame rather than a tactical line).
+     */
+    private static int[][] recordLines(Position[] positions) {
+        Random random = new Random(1);
+        int[][] result = new int[positions.length][];
+        for (int i = 0; i < positions.length; i++) {
+            Position pos = positions[i];
+            int[] line = new int[LINE_PLIES];
+            int length = 0;
+            while (length < LINE_PLIES) {
+                MoveList moveList = new MoveList(pos);
+                if (moveList.size() == 0)
+                    break;
+                int move = moveList.get(random.nextInt(moveList.size()));
+                if (length >= 4 && random.nextInt(10) < 8 && contains(moveList, line[length - 4]))
+                    move = line[length - 4];
+                pos.makeMove(move);
+                line[length++] = move;
+            }
+            for (int k = 0; k < length; k++) {
+                pos.undoMove();
+            }
+            result[i] = Arrays.copyOf(line, length);
+        }
+        return result;
+    }
+
+    private static boolean contains(MoveList moveList, int move) {
+        for (int i = 0; i < moveList.size(); i++) {
+            if (moveList.get(i) == move)
+                return true;
+        }
+        return false;
+    }
+
+    private int next() {
+        int index = cursor;
+        cursor = index + 1 == positions.length ? 0 : index + 1;
+        return index;
+    }
+
+    /**
+     * Plays the recorded line of one position and takes it back.
+     */
+    @Benchmark
+    public int playLine() {
+        int index = next();
+        Position pos = positions[index];
+        int repetitions = 0;
+        for (int move : lines[index]) {
+            pos.makeMove(move);
+            repetitions += pos.getState().numRepetition;
+        }
+        for (int i = lines[index].length; i > 0; --i) {
+            pos.undoMove();
+        }
+        return repetitions;
+    }
+
+    /**
+     * Plays the recorded line of one position and asks at every ply whether the side to move can repeat.
+     * The cost over {@link #playLine()} is the cuckoo test; the tracker does not take part in it.
+     */
+    @Benchmark
+    public int upcomingRepetitionAlongLine() {
+        int index = next();
+        Position pos = positions[index];
+        int found = 0;
+        for (int move : lines[index]) {
+            pos.makeMove(move);
+            if (pos.hasUpcomingRepetition(pos.getState().ply))
+                ++found;
+        }
+        for (int i = lines[index].length; i > 0; --i) {
+            pos.undoMove();
+        }
+        return found;
+    }
+
+    /**
+     * Perft, the make/undo overhead of the tracker when nothing repeats.
+     */
+    @Benchmark
+    public long perft() {
+        return MoveGenerator.numMoves(positions[next()], 3);
+    }
+
+    /**
+     * A new position per operation: what every new game pays for the tracker.
+     */
+    @Benchmark
+    public Position newPosition() {
+        return new Position(Corpus.FENS.get(next()), newTracker());
+    }
+
+    /**
+     * A new position that plays its recorded line (up to {@value #LINE_PLIES} plies) and keeps it on the board:
+     * {@code gc.alloc.rate.norm} is then the heap of a whole game, the states of the played plies included.
+     * It is an upper bound of the retained size, as the FEN parsing and the growth of the state stack leave
+     * some garbage too.
+     */
+    @Benchmark
+    public Position newGame() {
+        int index = next();
+        Position pos = new Position(Corpus.FENS.get(index), newTracker());
+        for (int move : lines[index]) {
+            pos.makeMove(move);
+        }
+        return pos;
+    }
+}
@@ -0,0 +1,81 @@
+package chesslib.bench;
+
+import chesslib.Bitboard;
+import chesslib.Position;
+import chesslib.move.MoveGenerator;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Magic versus PEXT ({@code Long.compress}) slider attacks, each in its own fork since the backend is chosen
+ * once at class initialization. Run it on the deployment hardware: PEXT only wins where the CPU has a fast
+ * PEXT instruction, and needs JDK 19+ (the PEXT fork fails otherwise instead of silently measuring magics).
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@State(Scope.Thread)
+public class SliderBackendBenchmark {
+    private Position[] positions;
+    private long[] occupancies;
+    private int cursor;
+
+    @Param({"3"})
+    public int depth;
+
+    @Setup
+    public void setup() {
+        String requested = System.getProperty("chesslib.sliderBackend", "magic");
+        if (!requested.equals(Bitboard.sliderBackend()))
+            throw new IllegalStateException("Requested the " + requested + " backend, running "
+                    + Bitboard.sliderBackend() + " (Long.compress needs JDK 19+)");
+        positions = Corpus.positions();
+        occupancies = new long[positions.length];
+        for (int i = 0; i < positions.length; i++) {
+            occupancies[i] = positions[i].occupancy();
+        }
+    }
+
+    private int next() {
+        int index = cursor;
+        cursor = index + 1 == positions.length ? 0 : index + 1;
+        return index;
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = "-Dchesslib.sliderBackend=magic")
+    public long perftMagic() {
+        return MoveGenerator.numMoves(positions[next()], depth);
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = "-Dchesslib.sliderBackend=pext")
+    public long perftPext() {
+        return MoveGenerator.numMoves(positions[next()], depth);
+    }
+
+    /**
+     * The raw lookups: queen attacks from every square with the occupancy of one corpus position.
+     */
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = "-Dchesslib.sliderBackend=magic")
+    public long queenAttacksMagic() {
+        return queenAttacksAllSquares(occupancies[next()]);
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = "-Dchesslib.sliderBackend=pext")
+    public long queenAttacksPext() {
+        return queenAttacksAllSquares(occupancies[next()]);
+    }
+
+    private static long queenAttacksAllSquares(long occupancy) {
+        long attacks = 0;
+        for (int square = 0; square < 64; ++square) {
+            attacks ^= Bitboard.queenAttacks(square, occupancy);
+        }
+        return attacks;
+    }
+}
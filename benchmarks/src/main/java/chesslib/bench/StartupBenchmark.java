@@ -0,0 +1,30 @@
+package chesslib.bench;
+
+import chesslib.Position;
+import chesslib.move.MoveGenerator;
+import chesslib.move.MoveList;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cold start: the time from a fresh JVM to the first generated move list, including the class initialization
+ * of the attack tables, the Zobrist keys and the move generator. Every measurement runs in its own fork,
+ * and the benchmark touches no chesslib class before the measured call.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(20)
+@State(Scope.Thread)
+public class StartupBenchmark {
+    private static final String START_FEN = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+
+    @Benchmark
+    public int timeToFirstCreateAll() {
+        MoveList moveList = new MoveList();
+        MoveGenerator.createAll(new Position(START_FEN), moveList);
+        return moveList.size();
+    }
+}
@@ -2,9 +2,11 @@ package chesslib;
 
 import chesslib.types.*;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.util.function.Consumer;
 
-import static chesslib.SharedRandom.RANDOM;
 import static chesslib.types.Direction.*;
 import static chesslib.types.PieceType.Value.*;
 import static chesslib.types.Rank.*;
@@ -50,21 +52,24 @@ public class Bitboard {
             RANK_1_BB, RANK_2_BB, RANK_3_BB, RANK_4_BB, RANK_5_BB, RANK_6_BB, RANK_7_BB, RANK_8_BB
     };
 
+    // The square pair tables are flat, indexed by squarePair(sq1, sq2), to save the indirection of a 2D array.
+    private static final int SQUARE_PAIRS = 64 * 64;
+
     /**
-     * 2D array to store line masks between squares on the chessboard.
-     * The valueBy at LINE_THROUGH[sq1][sq2] represents the line mask
+     * Flat table of line masks between squares on the chessboard.
+     * The valueBy at LINE_THROUGH[squarePair(sq1, sq2)] represents the line mask
      * between square sq1 and square sq2. If sq1 and sq2 are on
      * the same file, rank, or diagonal, it returns the bit mask
      * Of the full line; otherwise, the return value is 0.
      */
-    private static final long[][] LINE_THROUGH = new long[Square.VALUES_COUNT][Square.VALUES_COUNT];
+    private static final long[] LINE_THROUGH = new long[SQUARE_PAIRS];
 
     /**
-     * 2D array to store path masks between squares on the chessboard.
-     * The valueBy at PATH_BETWEEN[sq1][sq2] represents the path mask
+     * Flat table of path masks between squares on the chessboard.
+     * The valueBy at PATH_BETWEEN[squarePair(sq1, sq2)] represents the path mask
      * between square sq1 and square sq2.
      */
-    private static final long[][] PATH_BETWEEN = new long[Square.VALUES_COUNT][Square.VALUES_COUNT];
+    private static final long[] PATH_BETWEEN = new long[SQUARE_PAIRS];
 
     private static final long[] RIGHT_DIAGONAL = new long[Square.VALUES_COUNT];
     private static final long[] LEFT_DIAGONAL = new long[Square.VALUES_COUNT];
@@ -79,110 +84,247 @@ public class Bitboard {
 
     // magic data
     private static final int MAX_OCCUPANCY_CONFIGURATION = 1 << 12;
-    private static final long[] ATTACKS_TABLE = new long[102400 * 2];
-    private static final Magic[] ROOK_MAGIC = new Magic[Square.VALUES_COUNT];
-    private static final Magic[] BISHOP_MAGIC = new Magic[Square.VALUES_COUNT];
+    // The sum of 2^bitCount(mask) over all squares: 102400 entries for the rooks and 5248 for the bishops (841 KB).
+    private static final int ATTACKS_TABLE_SIZE = 102400 + 5248;
+    private static final long[] ATTACKS_TABLE = new long[ATTACKS_TABLE_SIZE];
+
+    // The magic of each square as flat primitive arrays, so a lookup reads no object header or pointer:
+    // attacks = ATTACKS_TABLE[offset + (((occupancy & mask) * magic) >>> shift)].
+    private static final long[] ROOK_MASKS = new long[Square.VALUES_COUNT];
+    private static final long[] ROOK_MAGICS = new long[Square.VALUES_COUNT];
+    private static final int[] ROOK_SHIFTS = new int[Square.VALUES_COUNT];
+    private static final int[] ROOK_OFFSETS = new int[Square.VALUES_COUNT];
+    private static final long[] BISHOP_MASKS = new long[Square.VALUES_COUNT];
+    private static final long[] BISHOP_MAGICS = new long[Square.VALUES_COUNT];
+    private static final int[] BISHOP_SHIFTS = new int[Square.VALUES_COUNT];
+    private static final int[] BISHOP_OFFSETS = new int[Square.VALUES_COUNT];
+
+    /**
+     * {@code Long.compress} (JDK 19+) when the PEXT backend is selected with {@code -Dchesslib.sliderBackend=pext},
+     * otherwise null. Looked up reflectively so the library still runs on older JDKs; a static final handle is
+     * inlined by the JIT like a direct call, so the intrinsic (a single PEXT instruction on x86 with BMI2) is used.
+     */
+    private static final MethodHandle COMPRESS = "pext".equals(System.getProperty("chesslib.sliderBackend"))
+            ? findCompress() : null;
+    // Whether the slider lookups index with compress(occupancy, mask) instead of the magic multiplication.
+    private static final boolean PEXT = COMPRESS != null;
+
+    /**
+     * Magic numbers found once by {@link #initMagicBitboards()} with the shared seed, by square. With them the
+     * class initialization only fills the attack tables, instead of searching for magics on every start.
+     * The shift of each square is {@code 64 - bitCount(mask)}, and every number is verified while the table is filled.
+     */
+    private static final long[] ROOK_MAGIC_NUMBERS = {
+            0x0080041340008020L, 0x0040006000100846L, 0x0100090090200040L, 0x42800C8008001000L,
+            0x0080080012800401L, 0x0200082411101200L, 0x0200280130860004L, 0x4080014220800100L,
+            0x0102002282010440L, 0x2022C01001C22000L, 0x0105001100406000L, 0x2282808010000800L,
+            0x9419001100080004L, 0x0082001044880600L, 0x10B1808016000100L, 0x0000801042800100L,
+            0x0820008080004000L, 0x0040028020004487L, 0x0018808020051002L, 0x0850008008001084L,
+            0x0000818048001400L, 0x2801010004000802L, 0x400014000810010AL, 0x000242000C408409L,
+            0x0042842080004000L, 0x0204200040401000L, 0x0010002120080401L, 0x0800100480080280L,
+            0x1510040080080180L, 0x00810009000A0C00L, 0xD200100400030812L, 0x405080C2000100B4L,
+            0x0080022000400444L, 0x0410201000400440L, 0x0005801000802000L, 0x40100008E1005100L,
+            0x0301910005004800L, 0x0000090901004400L, 0x4810100124002A08L, 0x0040004402000281L,
+            0x0000288040058001L, 0x3010004420114000L, 0x00B1011020010044L, 0x0608008310008008L,
+            0x0004480131010014L, 0x0244040002008080L, 0x0011000200210024L, 0x24008040B3020004L,
+            0x1002418022010200L, 0x1100200040100E40L, 0x0000100884600180L, 0x800A014074482200L,
+            0x9810820400080080L, 0x0802040080020080L, 0x0808080210010400L, 0x0000840491004200L,
+            0x2016405106018022L, 0x01C0022040810191L, 0x0003504020002901L, 0x0900490005100021L,
+            0xA102001018206492L, 0x204100080C000641L, 0x4400080082100104L, 0x0122906400490086L
+    };
+    private static final long[] BISHOP_MAGIC_NUMBERS = {
+            0x0020041011424080L, 0x0090447800404800L, 0x00C2020A01609000L, 0x0A04040082210080L,
+            0x400202100021C00AL, 0x405A061004000280L, 0x00AC610410401010L, 0x1001009804050400L,
+            0x0080200E06080100L, 0x20021044152ACA00L, 0x0002080808419006L, 0x0020041400800014L,
+            0x0B30108820210004L, 0x0001409004212080L, 0x0401420802C21000L, 0x0002458088082200L,
+            0x0010101504080803L, 0x1A64000821084201L, 0x000800C046002020L, 0x0000800802004000L,
+            0x0444000080A00010L, 0x1021026200C22A06L, 0x0032000088900850L, 0x4021000031011002L,
+            0x0086080070200800L, 0x0007480004281804L, 0x080801080A041100L, 0x840C080000220040L,
+            0x2849020084008406L, 0x0041802002021000L, 0x0008010000841120L, 0x4288408082020168L,
+            0x0A12082000400201L, 0x0001821008202404L, 0x1001084300580800L, 0x0420820080180180L,
+            0x0084010C00020082L, 0x90A00041000080A2L, 0x0001A40401088204L, 0x00008400C3010110L,
+            0x0028220222001012L, 0x81022A900810CC01L, 0x0400E08020821006L, 0x0002004202082020L,
+            0x4004100202021060L, 0x1060044880890200L, 0x0008780104010060L, 0x2010010620801820L,
+            0x0003041084040110L, 0x4112806802100400L, 0x5060012108186800L, 0x2050808020880000L,
+            0x002400100E088020L, 0x00C4210425020006L, 0x0120881220A40820L, 0x0010100121002108L,
+            0x0323802110062000L, 0x844D010100822120L, 0x880018461201040AL, 0x2004042002050400L,
+            0x4000000040082200L, 0x00042054100A8201L, 0x800040880D095200L, 0x9010100A04802200L
+    };
 
     //  ================        init
     static {
         // Initializes magic bitboards (sliders) first, then non-occupancy attacks and geometry.
-        initMagicBitboards();
+        initMagics(true);
         initAttackInfo();
     }
 
-    private static class Magic {// todo explaination more
-        long magicNum;
-        long mask;
-        int index;
-        int shift;
+    /**
+     * The index of an occupancy in the attack table of one square, relative to the square's offset.
+     * The multiplication by the magic maps every relevant blocker set to a distinct index
+     * (or to the index of a blocker set with the same attacks) in the top {@code 64 - shift} bits.
+     */
+    private static int magicIndex(long occupancy, long mask, long magic, int shift) {
+        return (int) (((occupancy & mask) * magic) >>> shift);
+    }
 
-        long attacks(long occupancy) {// todo explaination more
-            return ATTACKS_TABLE[(int) (index + (((occupancy & mask) * magicNum) >>> shift))];
+    /**
+     * The index of an occupancy in the attack table of one square with the PEXT backend: the blocker bits of the
+     * mask packed into the low bits, so the index of a blocker set is its rank among the subsets of the mask.
+     */
+    private static int pextIndex(long occupancy, long mask) {
+        try {
+            return (int) (long) COMPRESS.invokeExact(occupancy, mask);
+        } catch (Throwable e) {
+            throw new IllegalStateException(e); // Long.compress throws nothing
         }
+    }
 
-        int occupancyIndex(long occupancy) {// todo explaination more also about  >>>
-            return (int) (((occupancy & mask) * magicNum) >>> shift);
+    private static MethodHandle findCompress() {
+        try {
+            return MethodHandles.publicLookup().findStatic(Long.class, "compress",
+                    MethodType.methodType(long.class, long.class, long.class));
+        } catch (ReflectiveOperationException e) {
+            return null; // before JDK 19, fall back to the magics
         }
     }
 
+    /**
+     * @return the slider attack backend in use: "pext" if it was selected with
+     * {@code -Dchesslib.sliderBackend=pext} and the JDK has {@code Long.compress}, otherwise "magic".
+     * On CPUs without a fast PEXT instruction (x86 without BMI2, AMD before Zen 3, ARM) {@code Long.compress}
+     * is much slower than a multiplication, so the magics stay the default.
+     */
+    public static String sliderBackend() {
+        return PEXT ? "pext" : "magic";
+    }
+
+    /**
+     * The random source of the magic search, only created when a search runs: normally never, since the
+     * precomputed magics are used.
+     */
+    private static class MagicSearch {
+        static final java.util.Random RANDOM = new java.util.Random(SharedRandom.SEED);
+    }
+
     // ================================
     // Initialization routines
     // ================================
 
+    /**
+     * Searches new magic numbers for rook and bishop attacks on every square and refills the attack tables.
+     * The class initialization does not need this (it uses the precomputed magics); it is the fallback if a
+     * precomputed magic does not verify, and a way to regenerate them.
+     * With the PEXT backend there are no magics to search, so it only refills the attack tables and returns 0.
+     *
+     * @return the total number of tried magic numbers (for debugging).
+     */
+    public static long initMagicBitboards() {
+        return initMagics(false);
+    }
+
     /**
      * Initializes magic bitboards for rook and bishop attacks.
-     * This method computes magic numbers and attack tables for each square and piece type.
      * Magic bitboards allow fast calculation of sliding piece attacks (rook, bishop)
      * by using bitwise masking and indexing into precomputed tables.
      *
-     * @return the total number of failed attempts to find a suitable magic number (for debugging).
+     * @param precomputed whether to try the precomputed magic of each square before searching one
+     * @return the total number of tried magic numbers
      */
-    public static long initMagicBitboards() {
-        long failsFoundMagicCount = 0; // Total number of attempts across all squares
+    private static long initMagics(boolean precomputed) {
+        long numTries = 0; // Total number of attempts across all squares
         int attackTableIndex = 0; // Global offset into the shared ATTACKS_TABLE array
 
+        // Shared by all squares; an entry of numTryList is used in the current trial if it equals the trial number
+        long[] blockersList = new long[MAX_OCCUPANCY_CONFIGURATION];
+        long[] attacksList = new long[MAX_OCCUPANCY_CONFIGURATION];
+        int[] numTryList = new int[MAX_OCCUPANCY_CONFIGURATION];
+        int numTry = 0;
+        int[] sliders = {ROOK, BISHOP};
+
         // Iterate over all 64 squares
         for (int sq = A1; sq <= H8; ++sq) {
-            // Create magic container for rook and bishop for this square
-            ROOK_MAGIC[sq] = new Magic();
-            BISHOP_MAGIC[sq] = new Magic();
-
-            for (int pt : new int[]{ROOK, BISHOP}) {
-                Magic magic = pt == ROOK ? ROOK_MAGIC[sq] : BISHOP_MAGIC[sq];
+            for (int pt : sliders) {
+                long[] masks = pt == ROOK ? ROOK_MASKS : BISHOP_MASKS;
+                long[] magics = pt == ROOK ? ROOK_MAGICS : BISHOP_MAGICS;
+                int[] shifts = pt == ROOK ? ROOK_SHIFTS : BISHOP_SHIFTS;
+                int[] offsets = pt == ROOK ? ROOK_OFFSETS : BISHOP_OFFSETS;
 
                 // Exclude board edges, so we don't rely on unreachable squares
                 long edges = ((FILE_A_BB | FILE_H_BB) & ~fileBB(Square.file(sq))) |
                         ((RANK_1_BB | RANK_8_BB) & ~rankBB(Square.rank(sq)));
 
                 // The mask defines relevant blocker squares for this square and piece
-                magic.mask = createAttacks(pt, sq, 0) & ~edges;
-                magic.index = attackTableIndex;
+                long mask = masks[sq] = createAttacks(pt, sq, 0) & ~edges;
+                offsets[sq] = attackTableIndex;
 
                 // The shift tells us how many bits to shift after multiplying with the magic
-                magic.shift = 64 - bitCount(magic.mask);
-
-                long[] blockersList = new long[MAX_OCCUPANCY_CONFIGURATION];
-                long[] attacksList = new long[MAX_OCCUPANCY_CONFIGURATION];
-                int size = 0;
+                int shift = shifts[sq] = 64 - bitCount(mask);
 
                 // Enumerate all blocker combinations (subset of mask)
+                int size = 0;
                 long blockers = 0;
                 do {
                     blockersList[size] = blockers;
                     attacksList[size] = createAttacks(pt, sq, blockers);
-                    blockers = (blockers - magic.mask) & magic.mask;
+                    blockers = (blockers - mask) & mask;
                     ++size;
                 } while (blockers != 0);
 
-                // Attempt to find a magic number that avoids collisions
-                int[] numTryList = new int[MAX_OCCUPANCY_CONFIGURATION]; // Used to track per-index usage across attempts
-                int numTry = 0, i = 0, index;
+                if (PEXT) {
+                    // The carry-rippler above enumerates the subsets in the order of their compressed value,
+                    // so blockersList[i] has the PEXT index i: the table is filled without any search.
+                    magics[sq] = 0;
+                    System.arraycopy(attacksList, 0, ATTACKS_TABLE, attackTableIndex, size);
+                    attackTableIndex += size;
+                    continue;
+                }
 
-                while (i < size) {
+                boolean found = false;
+                if (precomputed) {
+                    magics[sq] = pt == ROOK ? ROOK_MAGIC_NUMBERS[sq] : BISHOP_MAGIC_NUMBERS[sq];
+                    found = fillAttacks(mask, magics[sq], shift, attackTableIndex,
+                            blockersList, attacksList, size, numTryList, ++numTry);
+                    ++numTries;
+                }
+                // Attempt to find a magic number that avoids collisions
+                while (!found) {
                     // Try a new candidate magic number
-                    magic.magicNum = RANDOM.nextLong() & RANDOM.nextLong() & RANDOM.nextLong();
-                    ++numTry;
-
-                    for (i = 0; i < size; ++i) {
-                        index = magic.occupancyIndex(blockersList[i]);
-
-                        // If index unused in current trial or attack matches previous one, it's valid
-                        if (numTryList[index] < numTry || attacksList[i] == magic.attacks(blockersList[i])) {
-                            numTryList[index] = numTry;
-                            ATTACKS_TABLE[attackTableIndex + index] = attacksList[i];
-                        } else {
-                            // Collision: restart the entire process with new magic number
-                            break;
-                        }
-                    }
+                    java.util.Random random = MagicSearch.RANDOM;
+                    magics[sq] = random.nextLong() & random.nextLong() & random.nextLong();
+                    found = fillAttacks(mask, magics[sq], shift, attackTableIndex,
+                            blockersList, attacksList, size, numTryList, ++numTry);
+                    ++numTries;
                 }
-                failsFoundMagicCount += numTry;
+
                 // Reserve space in attackTable for this square's configurations
                 attackTableIndex += size;
             }
         }
 
-        return failsFoundMagicCount;
+        return numTries;
+    }
+
+    /**
+     * Fills the attack table of one square with a candidate magic.
+     *
+     * @return false if the magic maps two blocker sets with different attacks to the same index
+     */
+    private static boolean fillAttacks(long mask, long magic, int shift, int offset,
+                                       long[] blockersList, long[] attacksList, int size,
+                                       int[] numTryList, int numTry) {
+        for (int i = 0; i < size; ++i) {
+            int index = magicIndex(blockersList[i], mask, magic, shift);
+
+            // If index unused in current trial or attack matches previous one, it's valid
+            if (numTryList[index] < numTry || attacksList[i] == ATTACKS_TABLE[offset + index]) {
+                numTryList[index] = numTry;
+                ATTACKS_TABLE[offset + index] = attacksList[i];
+            } else {
+                // Collision: the caller tries a new magic number
+                return false;
+            }
+        }
+        return true;
     }
 
     /**
@@ -239,7 +381,7 @@ public class Bitboard {
             // Initialize arrays for path and line between squares
             for (int sq2 = A1; sq2 <= H8; ++sq2) {
                 if (sq1 == sq2) {
-                    PATH_BETWEEN[sq1][sq1] = LINE_THROUGH[sq1][sq1] = sq1BB;
+                    PATH_BETWEEN[squarePair(sq1, sq1)] = LINE_THROUGH[squarePair(sq1, sq1)] = sq1BB;
                     continue;
                 }
                 long sq2BB = squareToBB(sq2);
@@ -248,11 +390,11 @@ public class Bitboard {
                         (sq2BB & attacks(BISHOP, sq1)) != 0 ? BISHOP : NULL_PIECE_TYPE;
 
                 // Calculate path between squares
-                PATH_BETWEEN[sq1][sq2] = pt != NULL_PIECE_TYPE ? ((attacks(pt, sq1, sq2BB)
+                PATH_BETWEEN[squarePair(sq1, sq2)] = pt != NULL_PIECE_TYPE ? ((attacks(pt, sq1, sq2BB)
                         & attacks(pt, sq2, sq1BB)) | sq2BB) : sq2BB;
 
                 // Calculate line between squares
-                LINE_THROUGH[sq1][sq2] = pt != NULL_PIECE_TYPE ? ((attacks(pt, sq1, EMPTY_BB)
+                LINE_THROUGH[squarePair(sq1, sq2)] = pt != NULL_PIECE_TYPE ? ((attacks(pt, sq1, EMPTY_BB)
                         & attacks(pt, sq2, EMPTY_BB)) | sq1BB | sq2BB) : EMPTY_BB;
 
                 // Note: Uncomment the following line if PathToEdge array is defined
@@ -264,8 +406,8 @@ public class Bitboard {
             // is from white prespective we look up.
             // left diagnoal of h8 is 0 a
 //            System.out.println(addSafety(sq, UP_LEFT));
-            LEFT_DIAGONAL[sq1] = LINE_THROUGH[sq1][Square.addSafety(sq1, UP_LEFT)] | LINE_THROUGH[sq1][Square.addSafety(sq1, DOWN_RIGHT)];
-            RIGHT_DIAGONAL[sq1] = LINE_THROUGH[sq1][Square.addSafety(sq1, UP_RIGHT)] | LINE_THROUGH[sq1][Square.addSafety(sq1, DOWN_LEFT)];
+            LEFT_DIAGONAL[sq1] = lineThrough(sq1, Square.addSafety(sq1, UP_LEFT)) | lineThrough(sq1, Square.addSafety(sq1, DOWN_RIGHT));
+            RIGHT_DIAGONAL[sq1] = lineThrough(sq1, Square.addSafety(sq1, UP_RIGHT)) | lineThrough(sq1, Square.addSafety(sq1, DOWN_LEFT));
         }
     }
 
@@ -297,7 +439,7 @@ public class Bitboard {
      * - Determining squares that would block a check or pin
      */
     public static long pathBetween(int squareFrom, int squareTo) {
-        return PATH_BETWEEN[squareFrom][squareTo];
+        return PATH_BETWEEN[squarePair(squareFrom, squareTo)];
     }
 
     /**
@@ -316,7 +458,12 @@ public class Bitboard {
      * - Determining all attack squares for sliding pieces
      */
     public static long lineThrough(int squareFrom, int squareTo) {
-        return LINE_THROUGH[squareFrom][squareTo];
+        return LINE_THROUGH[squarePair(squareFrom, squareTo)];
+    }
+
+    // Index of a pair of board squares (0..63 each) in the flat square pair tables.
+    private static int squarePair(int square1, int square2) {
+        return (square1 << 6) | square2;
     }
 
     /** Bitboard mask for the given file index (0..7). */
@@ -431,6 +578,147 @@ public class Bitboard {
         return bb << 16;
     }
 
+    /**
+     * Shifts a bitboard one square in a direction of {@link Direction} (a king step), dropping what leaves the board.
+     */
+    public static long shift(long bb, int direction) {
+        return switch (direction) {
+            case UP -> shiftUp(bb);
+            case DOWN -> shiftDown(bb);
+            case LEFT -> shiftLeft(bb);
+            case RIGHT -> shiftRight(bb);
+            case UP_LEFT -> shiftUpLeft(bb);
+            case UP_RIGHT -> shiftUpRight(bb);
+            case DOWN_LEFT -> shiftDownLeft(bb);
+            case DOWN_RIGHT -> shiftDownRight(bb);
+            default -> throw new IllegalArgumentException("Not a king step direction: " + direction);
+        };
+    }
+
+    // ================================
+    // Fills (set-wise, every bit at once)
+    // ================================
+
+    /** Every square of {@code bb} and all squares above them, in three shifts instead of a loop over the ranks. */
+    public static long northFill(long bb) {
+        bb |= shiftUp(bb);
+        bb |= bb << 16;
+        return bb | (bb << 32);
+    }
+
+    /** Every square of {@code bb} and all squares below them. */
+    public static long southFill(long bb) {
+        bb |= shiftDown(bb);
+        bb |= bb >>> 16;
+        return bb | (bb >>> 32);
+    }
+
+    /** The whole files of the squares of {@code bb}. */
+    public static long fileFill(long bb) {
+        return northFill(bb) | southFill(bb);
+    }
+
+    /**
+     * Kogge-Stone occluded fill: the squares reached from {@code gen} in one king step direction through the
+     * {@code empty} squares, including the squares of {@code gen}, in three doubling steps (1, 2 and 4 squares).
+     * The squares a step would wrap to (the a-file going right, the h-file going left) are removed from
+     * {@code empty} once, so the steps are plain shifts.
+     */
+    public static long occludedFill(long gen, long empty, int direction) {
+        empty &= wrapMask(direction);
+        int shift = Math.abs(direction);
+        if (direction > 0) {
+            gen |= empty & (gen << shift);
+            empty &= empty << shift;
+            gen |= empty & (gen << 2 * shift);
+            empty &= empty << 2 * shift;
+            return gen | (empty & (gen << 4 * shift));
+        }
+        gen |= empty & (gen >>> shift);
+        empty &= empty >>> shift;
+        gen |= empty & (gen >>> 2 * shift);
+        empty &= empty >>> 2 * shift;
+        return gen | (empty & (gen >>> 4 * shift));
+    }
+
+    /**
+     * The squares attacked in one direction by all the sliders of {@code sliders}: the occluded fill shifted one
+     * more step, so the first occupied square of each ray is included.
+     */
+    public static long slidingAttacks(long sliders, long occupancy, int direction) {
+        return shift(occludedFill(sliders, ~occupancy, direction), direction);
+    }
+
+    /**
+     * @return the squares a one-square shift in the direction may land on
+     */
+    public static long wrapMask(int direction) {
+        return switch (direction) {
+            case RIGHT, UP_RIGHT, DOWN_RIGHT -> ~FILE_A_BB;
+            case LEFT, UP_LEFT, DOWN_LEFT -> ~FILE_H_BB;
+            default -> FULL_BB;
+        };
+    }
+
+    // ================================
+    // Pawn structure (set-wise)
+    // ================================
+    // The queries that take both pawn sets return the matching pawns of both sides in one bitboard;
+    // intersect with the pawns of one side to split them.
+
+    /** The squares in front of the pawns of a side (towards promotion), excluding the pawns' squares. */
+    public static long frontSpan(int side, long pawns) {
+        return side == WHITE ? shiftUp(northFill(pawns)) : shiftDown(southFill(pawns));
+    }
+
+    /** The squares behind the pawns of a side, excluding the pawns' squares. */
+    public static long rearSpan(int side, long pawns) {
+        return frontSpan(side ^ 1, pawns);
+    }
+
+    /** The squares the pawns of a side may attack while they advance: the front spans of the adjacent files. */
+    public static long pawnAttackSpan(int side, long pawns) {
+        long front = frontSpan(side, pawns);
+        return shiftLeft(front) | shiftRight(front);
+    }
+
+    /** Pawns with no enemy pawn in front of them on their file or the adjacent files. */
+    public static long passedPawns(long whitePawns, long blackPawns) {
+        return (whitePawns & ~(frontSpan(BLACK, blackPawns) | pawnAttackSpan(BLACK, blackPawns)))
+                | (blackPawns & ~(frontSpan(WHITE, whitePawns) | pawnAttackSpan(WHITE, whitePawns)));
+    }
+
+    /** Pawns with no pawn of their side on the adjacent files. */
+    public static long isolatedPawns(long whitePawns, long blackPawns) {
+        return (whitePawns & ~fileFill(shiftLeft(whitePawns) | shiftRight(whitePawns)))
+                | (blackPawns & ~fileFill(shiftLeft(blackPawns) | shiftRight(blackPawns)));
+    }
+
+    /** Pawns with another pawn of their side in front of them on the same file (the rear pawns of doubled pawns). */
+    public static long doubledPawns(long whitePawns, long blackPawns) {
+        return (whitePawns & rearSpan(WHITE, whitePawns)) | (blackPawns & rearSpan(BLACK, blackPawns));
+    }
+
+    /**
+     * Pawns whose stop square (the square in front) is attacked by an enemy pawn and can't be defended by a pawn of
+     * their side, since no pawn of the side is behind on an adjacent file.
+     */
+    public static long backwardPawns(long whitePawns, long blackPawns) {
+        long whiteStops = shiftUp(whitePawns) & pawnAttacksBB(BLACK, blackPawns) & ~pawnAttackSpan(WHITE, whitePawns);
+        long blackStops = shiftDown(blackPawns) & pawnAttacksBB(WHITE, whitePawns) & ~pawnAttackSpan(BLACK, blackPawns);
+        return shiftDown(whiteStops) | shiftUp(blackStops);
+    }
+
+    /** The files without any pawn, as a bitboard of whole files. */
+    public static long openFiles(long whitePawns, long blackPawns) {
+        return ~fileFill(whitePawns | blackPawns);
+    }
+
+    /** The files with enemy pawns but without own pawns, as a bitboard of whole files. */
+    public static long halfOpenFiles(long ownPawns, long enemyPawns) {
+        return ~fileFill(ownPawns) & fileFill(enemyPawns);
+    }
+
     // ================================
     // Color / alignment helpers
     // ================================
@@ -451,7 +739,7 @@ public class Bitboard {
 
     // rerun true if all the square on the same file or rank or diagonal
     public static boolean onSameLine(int square1, int square2, int square3) {
-        return (LINE_THROUGH[square1][square2] & squareToBB(square3)) != 0; //todo
+        return (lineThrough(square1, square2) & squareToBB(square3)) != 0; //todo
     }
 
     // ================================
@@ -518,17 +806,54 @@ public class Bitboard {
 
     // ====    attacks by occupancy
     public static long bishopAttacks(int square, long occupancy) {
-        return BISHOP_MAGIC[square].attacks(occupancy);
+        if (PEXT)
+            return ATTACKS_TABLE[BISHOP_OFFSETS[square] + pextIndex(occupancy, BISHOP_MASKS[square])];
+        return ATTACKS_TABLE[BISHOP_OFFSETS[square]
+                + magicIndex(occupancy, BISHOP_MASKS[square], BISHOP_MAGICS[square], BISHOP_SHIFTS[square])];
     }
 
     public static long rookAttacks(int square, long occupancy) {
-        return ROOK_MAGIC[square].attacks(occupancy);
+        if (PEXT)
+            return ATTACKS_TABLE[ROOK_OFFSETS[square] + pextIndex(occupancy, ROOK_MASKS[square])];
+        return ATTACKS_TABLE[ROOK_OFFSETS[square]
+                + magicIndex(occupancy, ROOK_MASKS[square], ROOK_MAGICS[square], ROOK_SHIFTS[square])];
     }
 
     public static long queenAttacks(int square, long occupancy) {
         return bishopAttacks(square, occupancy) | rookAttacks(square, occupancy);
     }
 
+    // ====    set-wise attacks of every piece of a bitboard, without table lookups
+
+    public static long pawnAttacksBB(int side, long pawns) {
+        return side == WHITE ? shiftUpLeft(pawns) | shiftUpRight(pawns) : shiftDownLeft(pawns) | shiftDownRight(pawns);
+    }
+
+    public static long knightAttacksBB(long knights) {
+        long oneFile = shiftLeft(knights) | shiftRight(knights);
+        long twoFiles = shiftLeft(shiftLeft(knights)) | shiftRight(shiftRight(knights));
+        return shiftUpTwice(oneFile) | shiftDownTwice(oneFile) | shiftUp(twoFiles) | shiftDown(twoFiles);
+    }
+
+    public static long kingAttacksBB(long kings) {
+        long row = shiftLeft(kings) | shiftRight(kings);
+        return row | shiftUp(row | kings) | shiftDown(row | kings);
+    }
+
+    public static long bishopAttacksBB(long bishops, long occupancy) {
+        return slidingAttacks(bishops, occupancy, UP_LEFT) | slidingAttacks(bishops, occupancy, UP_RIGHT)
+                | slidingAttacks(bishops, occupancy, DOWN_LEFT) | slidingAttacks(bishops, occupancy, DOWN_RIGHT);
+    }
+
+    public static long rookAttacksBB(long rooks, long occupancy) {
+        return slidingAttacks(rooks, occupancy, UP) | slidingAttacks(rooks, occupancy, DOWN)
+                | slidingAttacks(rooks, occupancy, LEFT) | slidingAttacks(rooks, occupancy, RIGHT);
+    }
+
+    public static long queenAttacksBB(long queens, long occupancy) {
+        return bishopAttacksBB(queens, occupancy) | rookAttacksBB(queens, occupancy);
+    }
+
     /**
      * Attacks for any piece type from a square given an occupancy mask.
      * For non-sliders (knight/king) occupancy is ignored.
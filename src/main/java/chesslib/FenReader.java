@@ -0,0 +1,262 @@
+package chesslib;
+
+import chesslib.exceptions.IllegalPositionException;
+import chesslib.types.Piece;
+import chesslib.types.Square;
+
+import static chesslib.types.Piece.Value.*;
+import static chesslib.types.PieceType.Value.*;
+import static chesslib.types.Rank.*;
+import static chesslib.types.Side.Value.*;
+import static chesslib.types.Square.Value.NULL_SQUARE;
+
+/**
+ * Single-pass FEN reader: checks the syntax of a FEN while it fills the board, without regular expressions,
+ * splitting or substrings, so reading a FEN creates no garbage.
+ * <p>
+ * It accepts exactly what {@link FenValidation#isValidFenSyntax} used to accept with its regular expression:
+ * leading, trailing and repeated whitespace, Shredder and X-FEN castling letters in any order (without duplicates),
+ * and the half move clock and the full move number as plain digits. Numbers that do not fit an int are rejected.
+ * When reading into a position, a second king and a pawn on the first or last rank are rejected as soon as they
+ * are read.
+ */
+final class FenReader {
+    // Piece value by FEN letter, NULL_PIECE for any other character.
+    private static final int[] PIECES_BY_CHAR = new int[128];
+
+    // The castling letters are collected as bits, ordered like the characters ('A'-'H', 'K', 'Q', 'a'-'h', 'k', 'q'),
+    // so that the rights are added in the same order as the sorted castling field of the old setFen.
+    private static final int CASTLING_KING_BIT = 8;
+    private static final int CASTLING_QUEEN_BIT = 9;
+    private static final int CASTLING_BLACK_OFFSET = 10;
+
+    private static final int MAX_FULL_MOVE_NUMBER = Integer.MAX_VALUE / 2;
+
+    static {
+        for (char c : "PNBRQKpnbrqk".toCharArray()) {
+            PIECES_BY_CHAR[c] = Piece.valueBy(c);
+        }
+    }
+
+    private FenReader() {
+    }
+
+    /**
+     * Sets up a position from a FEN, reusing the arrays of the position.
+     *
+     * @param fen    the FEN to read
+     * @param target the position to set up. If an exception is thrown, it must be set up again before it is used.
+     * @throws IllegalPositionException if the FEN has a syntax error or describes an illegal position
+     */
+    static void read(CharSequence fen, Position target) throws IllegalPositionException {
+        if (!parse(fen, target))
+            throw new IllegalPositionException(GameManager.INVALID_FEN_SYNTAX);
+    }
+
+    /**
+     * Checks the syntax of a FEN only, see {@link FenValidation#isValidFenSyntax}.
+     */
+    static boolean isValidSyntax(CharSequence fen) {
+        return parse(fen, null);
+    }
+
+    /**
+     * Parses the six fields of a FEN, setting up {@code target} on the way if it is not null.
+     *
+     * @return false if the FEN has a syntax error
+     */
+    private static boolean parse(CharSequence fen, Position target) {
+        int end = fen.length();
+        while (end > 0 && fen.charAt(end - 1) <= ' ')
+            --end;
+        int i = 0;
+        while (i < end && fen.charAt(i) <= ' ')
+            ++i;
+
+        if (target != null)
+            target.resetBoard();
+
+        // 1. the board, from rank 8 down to rank 1
+        int file = 0, rank = RANK_8;
+        boolean lastWasDigit = false;
+        for (; i < end; ++i) {
+            char c = fen.charAt(i);
+            if (c == '/') {
+                if (file != Square.BOARD_DIM || rank == RANK_1)
+                    return false;
+                --rank;
+                file = 0;
+                lastWasDigit = false;
+            } else if (c >= '1' && c <= '8') {
+                file += c - '0';
+                if (lastWasDigit || file > Square.BOARD_DIM)
+                    return false; // a digit can't follow another digit, a rank has 8 squares
+                lastWasDigit = true;
+            } else if (isSeparator(c)) {
+                break;
+            } else {
+                int piece = c < PIECES_BY_CHAR.length ? PIECES_BY_CHAR[c] : NULL_PIECE;
+                if (piece == NULL_PIECE || file == Square.BOARD_DIM)
+                    return false;
+                if (target != null)
+                    addPiece(target, piece, Square.valueBy(file, rank));
+                ++file;
+                lastWasDigit = false;
+            }
+        }
+        if (rank != RANK_1 || file != Square.BOARD_DIM || (i = skipSeparator(fen, i, end)) < 0)
+            return false;
+        if (target != null)
+            target.validateBoard();
+
+        // 2. the side to move
+        char sideChar = fen.charAt(i++);
+        if (sideChar != 'w' && sideChar != 'b')
+            return false;
+        int side = sideChar == 'w' ? WHITE : BLACK;
+        if ((i = skipSeparator(fen, i, end)) < 0)
+            return false;
+
+        // 3. castling rights: '-' or up to four distinct letters
+        int castlingBits = 0, castlingCount = 0;
+        if (fen.charAt(i) == '-') {
+            ++i;
+        } else {
+            for (; i < end && !isSeparator(fen.charAt(i)); ++i) {
+                int bit = castlingBit(fen.charAt(i));
+                if (bit < 0 || (castlingBits & (1 << bit)) != 0 || ++castlingCount > 4)
+                    return false;
+                castlingBits |= 1 << bit;
+            }
+        }
+        if ((i = skipSeparator(fen, i, end)) < 0)
+            return false;
+
+        // 4. the en passant square: '-' or a square on the third or sixth rank
+        int enPassant = NULL_SQUARE;
+        if (fen.charAt(i) == '-') {
+            ++i;
+        } else {
+            if (i + 1 >= end)
+                return false;
+            char fileChar = fen.charAt(i), rankChar = fen.charAt(i + 1);
+            if (fileChar < 'a' || fileChar > 'h' || (rankChar != '3' && rankChar != '6'))
+                return false;
+            enPassant = Square.valueBy(fileChar - 'a', rankChar - '1');
+            i += 2;
+        }
+        if ((i = skipSeparator(fen, i, end)) < 0)
+            return false;
+
+        // 5. the half move clock
+        int digitsEnd = digitsEnd(fen, i, end);
+        long rule50 = parseNumber(fen, i, digitsEnd);
+        if (rule50 < 0 || (i = skipSeparator(fen, digitsEnd, end)) < 0)
+            return false;
+
+        // 6. the full move number, the last field
+        digitsEnd = digitsEnd(fen, i, end);
+        long fullMoveNumber = parseNumber(fen, i, digitsEnd);
+        if (fullMoveNumber < 0 || fullMoveNumber > MAX_FULL_MOVE_NUMBER || digitsEnd != end)
+            return false;
+
+        if (target != null) {
+            // the castling rights need the whole board, so they are added once the syntax is known to be valid
+            for (int bits = castlingBits; bits != 0; bits &= bits - 1) {
+                addCastlingRight(target, Integer.numberOfTrailingZeros(bits));
+            }
+            // some FENs number the moves from 0
+            target.finishSetup(side, (int) Math.max(1, fullMoveNumber), enPassant, (int) rule50);
+        }
+        return true;
+    }
+
+    private static void addPiece(Position target, int piece, int square) throws IllegalPositionException {
+        if (Piece.type(piece) == KING && target.pieceCount(piece) != 0)
+            throw new IllegalPositionException("Invalid number of kings");
+        if (Piece.type(piece) == PAWN
+                && (Square.rank(square) == RANK_1 || Square.rank(square) == RANK_8))
+            throw new IllegalPositionException("Pawn on first or last rank");
+        target.addPiece(piece, square);
+    }
+
+    /**
+     * Adds the castling right of one castling letter, given by its bit (see {@link #castlingBit}).
+     * 'K' and 'Q' take the outermost rook of the first rank, a file letter the rook of that file.
+     */
+    private static void addCastlingRight(Position target, int bit) {
+        int side = bit < CASTLING_BLACK_OFFSET ? WHITE : BLACK;
+        int letter = bit - side * CASTLING_BLACK_OFFSET;
+        int relativeRank = flippedIfBlack(side, RANK_1);
+
+        int rookSq;
+        if (letter < CASTLING_KING_BIT) {
+            rookSq = Square.valueBy(letter, relativeRank);
+        } else {
+            long rooksOnFirstRank = target.occupancyBySideAndType(side, ROOK)
+                    & Bitboard.rankBB(relativeRank);
+            // the rook square might be NULL_SQUARE, it is verified by addCastlingRight
+            rookSq = letter == CASTLING_KING_BIT ? Bitboard.msbToSquare(rooksOnFirstRank)
+                    : Bitboard.lsbToSquare(rooksOnFirstRank);
+        }
+        target.addCastlingRight(side, rookSq);
+    }
+
+    /**
+     * @return the bit of a castling letter, or -1 if the character is not a castling letter
+     */
+    private static int castlingBit(char c) {
+        if (c >= 'A' && c <= 'H')
+            return c - 'A';
+        if (c >= 'a' && c <= 'h')
+            return CASTLING_BLACK_OFFSET + c - 'a';
+        return switch (c) {
+            case 'K' -> CASTLING_KING_BIT;
+            case 'Q' -> CASTLING_QUEEN_BIT;
+            case 'k' -> CASTLING_BLACK_OFFSET + CASTLING_KING_BIT;
+            case 'q' -> CASTLING_BLACK_OFFSET + CASTLING_QUEEN_BIT;
+            default -> -1;
+        };
+    }
+
+    /**
+     * The whitespace characters that separate the fields (the characters of the {@code \s} regex class).
+     */
+    private static boolean isSeparator(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    /**
+     * Skips the whitespace between two fields.
+     *
+     * @return the index of the next field, or -1 if there is no whitespace at {@code i} or no field after it
+     */
+    private static int skipSeparator(CharSequence fen, int i, int end) {
+        if (i >= end || !isSeparator(fen.charAt(i)))
+            return -1;
+        while (isSeparator(fen.charAt(i)))
+            ++i; // the FEN is trimmed, so a field follows the whitespace
+        return i;
+    }
+
+    private static int digitsEnd(CharSequence fen, int i, int end) {
+        while (i < end && fen.charAt(i) >= '0' && fen.charAt(i) <= '9')
+            ++i;
+        return i;
+    }
+
+    /**
+     * @return the value of the digits {@code fen[start, end)}, or -1 if there are none or the value does not fit an int
+     */
+    private static long parseNumber(CharSequence fen, int start, int end) {
+        if (start == end)
+            return -1;
+        long value = 0;
+        for (int i = start; i < end; ++i) {
+            value = value * 10 + (fen.charAt(i) - '0');
+            if (value > Integer.MAX_VALUE)
+                return -1;
+        }
+        return value;
+    }
+}
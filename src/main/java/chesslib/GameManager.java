@@ -79,10 +79,10 @@ public class GameManager {
 
     private void setFen(String newFen, boolean validateFen) {
         if (validateFen) {
-            if (newFen == null || !FenValidation.isValidFenSyntax(newFen)) {
+            if (newFen == null) {
                 throw new IllegalPositionException(INVALID_FEN_SYNTAX);
             }
-            position = new Position(newFen);
+            position = new Position(newFen); // the FEN reader checks the syntax
             position.positionIsLegalOrThrow();
         } else {
             position = new Position(newFen);
@@ -196,9 +196,10 @@ public class GameManager {
      * @return a list of Move objects representing all legal moves
      */
     public List<Move> getAllLegalMoves() {
-        List<Move> result = new ArrayList<>();
-        for (int move : getMoveList()) {
-            result.add(new Move(move));
+        MoveList moveList = getMoveList();
+        List<Move> result = new ArrayList<>(moveList.size());
+        for (int i = 0; i < moveList.size(); i++) {
+            result.add(new Move(moveList.get(i)));
         }
         return result;
     }
@@ -217,7 +218,9 @@ public class GameManager {
         HashSet<Move> result = new HashSet<>();
         Piece pieceOnFrom = getPiece(from);
         if (pieceOnFrom != null && pieceOnFrom.side() == sideToPlay()) {
-            for (int move : getMoveList()) {
+            MoveList moveList = getMoveList();
+            for (int i = 0; i < moveList.size(); i++) {
+                int move = moveList.get(i);
                 if (Move.startSquare(move) == from.value())
                     result.add(new Move(move));
             }
@@ -243,8 +246,9 @@ public class GameManager {
      */
     public GameStatus gameStatus() {
         if (gameStatus == null) {
-            MoveList moveList = getMoveList();
-            gameStatus =  moveList.size() == 0 ? !position.inCheck() ? GameStatus.DRAW_BY_STALEMATE
+            // reuse the cached move list if there is one, otherwise a legal move existence check is enough
+            boolean noLegalMove = moveList != null ? moveList.size() == 0 : !MoveGenerator.hasAnyLegalMove(position);
+            gameStatus =  noLegalMove ? !position.inCheck() ? GameStatus.DRAW_BY_STALEMATE
                     : sideToPlay() == Side.WHITE ? GameStatus.BLACK_WON_BY_CHECKMATE : GameStatus.WHITE_WON_BY_CHECKMATE
                     : position.inInsufficientMaterial() ? GameStatus.DRAW_BY_INSUFFICIENT_MATERIAL
                     : position.inVerifiedThreeFoldRepetition() ? GameStatus.DRAW_BY_REPETITION
@@ -337,6 +341,17 @@ public class GameManager {
     }
 
 
+    /**
+     * Returns the squares attacked by the opponent of the side to play, e.g. for a threat overlay.
+     * The king of the side to play does not block the attacks, so the squares behind it on an attacking line
+     * are included: the king cannot move to any of the returned squares.
+     *
+     * @return an array of the squares attacked by the opponent
+     */
+    public Square[] getAttackedSquares() {
+        return Bitboard.getSquares(position.enemyAttacks());
+    }
+
     /**
      * Generates a FEN string for a Chess960 (Fischer Random Chess) starting position.
      * The piece arrangement is shuffled with specific constraints for Chess960.
@@ -533,11 +548,12 @@ public class GameManager {
         final int intMove = toIntMove(move);
         StringBuilder result = new StringBuilder(buildSanWithoutSuffix(intMove));
 
-        position.makeMove(intMove);
-        if (position.inCheck()) {
+        // only a checking move needs to be played, to tell check from mate
+        if (position.givesCheck(intMove)) {
+            position.makeMove(intMove);
             result.append(MoveGenerator.hasAnyLegalMove(position) ? "+" : "#");
+            position.undoMove();
         }
-        position.undoMove();
 
         return result.toString();
     }
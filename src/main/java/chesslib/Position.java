@@ -5,6 +5,7 @@ import chesslib.move.Move;
 import chesslib.types.*;
 
 
+import java.io.IOException;
 import java.util.*;
 
 import static chesslib.move.Move.*;
@@ -29,11 +30,19 @@ public class Position {
     // Constants defining the conditions for a draw
     private static final int RULE_50_COUNT_TO_DRAW = 100; // i think the correct number is 100 not 99
 
-    private byte[] repetitionList;
-    private static final int REPETITION_TABLE_SIZE = 1 << 12;
-    private static final int REPETITION_MASK = REPETITION_TABLE_SIZE - 1;
+    // filters the positions that may repeat an earlier one, see updateRepetition()
+    private RepetitionTracker repetitions;
     private static final int NUM_REPETITION_TO_DRAW = 3;
 
+    // Piece values of the static exchange evaluation in pawn units, indexed by piece type.
+    // The king is never captured in an exchange, so its value is not used.
+    private static final int[] SEE_VALUES = {0, 1, 3, 3, 5, 9, 0};
+    // Longest possible FEN: 64 pieces and 7 slashes, the side, 4 castling letters, an en passant square,
+    // two 10 digit numbers and 5 spaces.
+    public static final int MAX_FEN_LENGTH = 71 + 1 + 4 + 2 + 10 + 10 + 5;
+    // FEN piece letters indexed by piece value
+    private static final String PIECE_NAMES = "-PNBRQK--pnbrqk";
+
 
     /**
      * Represents the current state of the chess position.
@@ -42,6 +51,14 @@ public class Position {
     private int numMoves;             // Total number of moves made in the game // todo maybe we can replace it by using state.ply
     private PositionState state;      // Detailed state of the current position, including king info, castling rights, etc.
 
+    // States indexed by the number of moves made since the root (setFen or copy).
+    // makeMove(int) reuses stateStack[stateIndex + 1] instead of allocating, so make/undo only moves the index.
+    // A state is created the first time its ply is reached, and the stack grows (doubles) when a game gets
+    // longer than its size, so the memory follows the plies actually played.
+    private static final int INITIAL_STATE_STACK_SIZE = 16;
+    private PositionState[] stateStack;
+    private int stateIndex;           // index of the current state, equals the number of moves made since the root
+
 
     // Board representation using bitboards and arrays
 
@@ -97,6 +114,36 @@ public class Position {
     // `colorKey` holds a random key for the side to move.
     private static final long colorKey;
 
+    /**
+     * Whether every state also carries {@link PositionState#keyHigh}, the high half of a 128-bit key whose low
+     * half is {@link PositionState#key}. Opt in with {@code -Dchesslib.wideKeys=true}; when it is off the JIT
+     * removes the updates, so make/undo costs the same as without it.
+     */
+    public static final boolean WIDE_KEYS = Boolean.getBoolean("chesslib.wideKeys");
+    // The high key tables, independent of the tables above (own seed), or null when WIDE_KEYS is off.
+    private static final long WIDE_KEYS_SEED = 0x5DEECE66DL;
+    private static final long[][] pieceSquareKeysHigh;
+    private static final long[] enPassantKeysHigh;
+    private static final long[] castlingKeysHigh;
+    private static final long colorKeyHigh;
+
+    // `materialKeys[piece][i]` is added to the material key for the (i + 1)-th piece of that kind on the board,
+    // so the material key only depends on the piece counts.
+    private static final long[][] materialKeys = new long[Piece.VALUES_COUNT][Square.VALUES_COUNT];
+    // Material keys of the dead positions (K vs K, K+B vs K, K+N vs K), and of the ones that are dead
+    // when the two bishops stand on squares of the same color (K+B vs K+B, K+BB vs K).
+    private static final long[] deadMaterialKeys;
+    private static final long[] twoBishopsMaterialKeys;
+
+    // Cuckoo tables of the reversible moves of the pieces other than pawns, for hasUpcomingRepetition().
+    // A move of a piece between two squares it attacks on an empty board changes the key by
+    // pieceSquareKeys[piece][s1] ^ pieceSquareKeys[piece][s2] ^ colorKey, whichever way it goes;
+    // that key difference is stored in one of two slots given by two hashes of it, together with the move.
+    private static final int CUCKOO_SIZE = 1 << 13;
+    private static final long[] cuckooKeys = new long[CUCKOO_SIZE];
+    private static final int[] cuckooMoves = new int[CUCKOO_SIZE];
+    static final int CUCKOO_MOVE_COUNT = 3668; // number of such moves, checked when the tables are built
+
 
     // =======================
     // Initialization
@@ -124,6 +171,101 @@ public class Position {
 
         // Initialize a random key for the side to move
         colorKey = r.nextLong();
+
+        initCuckooTables();
+
+        // drawn last, so that the keys above keep their values
+        for (int piece : Piece.intValues())
+            for (int i = 0; i < Square.VALUES_COUNT; ++i)
+                materialKeys[piece][i] = r.nextLong();
+
+        if (WIDE_KEYS) {
+            Random high = new Random(WIDE_KEYS_SEED);
+            pieceSquareKeysHigh = new long[Piece.VALUES_COUNT][Square.VALUES_COUNT];
+            for (int piece : Piece.intValues())
+                for (int square = A1; square <= H8; ++square)
+                    pieceSquareKeysHigh[piece][square] = high.nextLong();
+            castlingKeysHigh = new long[Castling.SIZE];
+            for (int i = 0; i < castlingKeysHigh.length; ++i)
+                castlingKeysHigh[i] = high.nextLong();
+            enPassantKeysHigh = new long[Square.VALUES_COUNT];
+            for (int square = A1; square <= H8; ++square)
+                enPassantKeysHigh[square] = high.nextLong();
+            enPassantKeysHigh[NULL_SQUARE] = 0;
+            colorKeyHigh = high.nextLong();
+        } else {
+            pieceSquareKeysHigh = null;
+            castlingKeysHigh = null;
+            enPassantKeysHigh = null;
+            colorKeyHigh = 0;
+        }
+
+        deadMaterialKeys = new long[]{
+                materialKeyOf(WHITE_KING, BLACK_KING),
+                materialKeyOf(WHITE_KING, BLACK_KING, WHITE_BISHOP),
+                materialKeyOf(WHITE_KING, BLACK_KING, BLACK_BISHOP),
+                materialKeyOf(WHITE_KING, BLACK_KING, WHITE_KNIGHT),
+                materialKeyOf(WHITE_KING, BLACK_KING, BLACK_KNIGHT)};
+        twoBishopsMaterialKeys = new long[]{
+                materialKeyOf(WHITE_KING, BLACK_KING, WHITE_BISHOP, BLACK_BISHOP),
+                materialKeyOf(WHITE_KING, BLACK_KING, WHITE_BISHOP, WHITE_BISHOP),
+                materialKeyOf(WHITE_KING, BLACK_KING, BLACK_BISHOP, BLACK_BISHOP)};
+    }
+
+    /**
+     * @return the material key of a board with exactly the given pieces
+     */
+    private static long materialKeyOf(int... pieces) {
+        int[] counts = new int[Piece.VALUES_COUNT];
+        long key = 0;
+        for (int piece : pieces)
+            key ^= materialKeys[piece][counts[piece]++];
+        return key;
+    }
+
+    /**
+     * Inserts every reversible move of the pieces other than pawns into the cuckoo tables: an entry displaced
+     * from its slot moves to its other slot until an empty slot is reached.
+     */
+    private static void initCuckooTables() {
+        int count = 0;
+        for (int piece : Piece.intValues()) {
+            int pieceType = Piece.type(piece);
+            if (pieceType == PAWN)
+                continue;
+            for (int s1 = A1; s1 <= H8; ++s1) {
+                for (int s2 = s1 + 1; s2 <= H8; ++s2) {
+                    if ((attacks(pieceType, s1) & squareToBB(s2)) == 0)
+                        continue;
+
+                    int move = Move.create(s1, s2, NORMAL);
+                    long key = pieceSquareKeys[piece][s1] ^ pieceSquareKeys[piece][s2] ^ colorKey;
+                    int i = cuckooH1(key);
+                    while (true) {
+                        long displacedKey = cuckooKeys[i];
+                        int displacedMove = cuckooMoves[i];
+                        cuckooKeys[i] = key;
+                        cuckooMoves[i] = move;
+                        if (displacedMove == NULL_MOVE)
+                            break; // the slot was empty
+                        key = displacedKey;
+                        move = displacedMove;
+                        i = i == cuckooH1(key) ? cuckooH2(key) : cuckooH1(key);
+                    }
+                    ++count;
+                }
+            }
+        }
+        if (count != CUCKOO_MOVE_COUNT)
+            throw new IllegalStateException("Unexpected number of cuckoo moves: " + count);
+    }
+
+    private static int cuckooH1(long key) {
+        return (int) key & (CUCKOO_SIZE - 1);
+    }
+
+    private static int cuckooH2(long key) {
+        return (int) (key >>> 16) & (CUCKOO_SIZE - 1);
     }
 
 
@@ -137,6 +279,173 @@ public class Position {
         setFen(newFen);
     }
 
+    /**
+     * Creates a new chess position from a FEN with a chosen repetition tracker
+     * (see {@link RepetitionTracker#ring()} and {@link RepetitionTracker#table()}).
+     *
+     * @param fen         the FEN of the position
+     * @param repetitions the tracker of the keys of the game, owned by the position from now on
+     */
+    public Position(CharSequence fen, RepetitionTracker repetitions) {
+        this.repetitions = repetitions;
+        reset(fen);
+    }
+
+    /**
+     * Creates an empty position, to be set up with the setup steps of {@link #setFen} (see {@link PositionCodec}).
+     */
+    Position() {
+    }
+
+    /**
+     * Creates an independent copy of another position (see {@link #copy(int)}).
+     *
+     * @param other        the position to copy
+     * @param historyPlies the maximum number of previous states to copy
+     */
+    private Position(Position other, int historyPlies) {
+        sideToMove = other.sideToMove;
+        numMoves = other.numMoves;
+        isChess960 = other.isChess960;
+
+        occupancyBB = other.occupancyBB;
+        occupancyBySideBB = other.occupancyBySideBB.clone();
+        occupancyByPieceBB = other.occupancyByPieceBB.clone();
+        occupancyByTypeBB = other.occupancyByTypeBB.clone();
+        board = other.board.clone();
+        piecesCount = other.piecesCount.clone();
+
+        // castling tables never change after setFen, but they are copied so the two positions stay fully independent
+        castlingOptionsMask = other.castlingOptionsMask.clone();
+        castlingDestSquareKing = other.castlingDestSquareKing.clone();
+        castlingDestSquareRook = other.castlingDestSquareRook.clone();
+        castlingMoves = other.castlingMoves.clone();
+        castlingPath = other.castlingPath.clone();
+        castlingKingPath = other.castlingKingPath.clone();
+
+        repetitions = other.repetitions.copy();
+        copyHistory(other.state, historyPlies);
+
+        assert positionIsLegal();
+    }
+
+    /**
+     * Creates an independent copy of this position with enough state history for repetition detection
+     * (the last {@code min(rule50, ply)} plies).
+     * <p>
+     * Much cheaper than {@code new Position(getFen())}: it only copies arrays and keeps the repetition info.
+     * Typical use is handing a position to another thread.
+     *
+     * @return a copy of this position
+     */
+    public Position copy() {
+        return copy(Math.min(state.rule50, state.ply));
+    }
+
+    /**
+     * Creates an independent copy of this position that keeps at most {@code historyPlies} previous states.
+     * <p>
+     * The oldest copied state becomes the root of the copy (ply 0, no last move), so the copy can undo
+     * at most {@code historyPlies} moves and {@link #moveHistory()} only contains those moves.
+     * Repetitions are detected as long as the repeated positions are inside the copied history;
+     * use {@link #copy()} to keep everything repetition detection needs.
+     *
+     * @param historyPlies the maximum number of previous states to copy, 0 copies only the current state
+     * @return a copy of this position
+     */
+    public Position copy(int historyPlies) {
+        if (historyPlies < 0) {
+            throw new IllegalArgumentException("historyPlies must not be negative: " + historyPlies);
+        }
+        return new Position(this, historyPlies);
+    }
+
+    /**
+     * Copies the current state and up to {@code historyPlies} previous states into a new state stack.
+     * Plies are renumbered so that the oldest copied state is ply 0, which keeps every history walk
+     * (bounded by {@code ply}) inside the copied states.
+     */
+    private void copyHistory(PositionState current, int historyPlies) {
+        int count = 1;
+        for (PositionState st = current.previous; st != null && count <= historyPlies; st = st.previous) {
+            ++count;
+        }
+
+        initStateStack(count);
+        stateIndex = count - 1;
+        PositionState source = current;
+        for (int i = stateIndex; i >= 0; --i, source = source.previous) {
+            copyState(source, stateStack[i]);
+            stateStack[i].previous = i == 0 ? null : stateStack[i - 1];
+        }
+
+        // the oldest copied state is the new root
+        PositionState root = stateStack[0];
+        root.lastMove = NULL_MOVE;
+        int rootPly = root.ply;
+        for (int i = 0; i <= stateIndex; ++i) {
+            stateStack[i].ply -= rootPly;
+        }
+        state = stateStack[stateIndex];
+    }
+
+    private static void copyState(PositionState st, PositionState result) {
+        result.kingSquare = st.kingSquare;
+        result.numRepetition = st.numRepetition;
+        result.castlingRights = st.castlingRights;
+        result.rule50 = st.rule50;
+        result.enPassant = st.enPassant;
+        result.capturedPiece = st.capturedPiece;
+        result.checkers = st.checkers;
+        result.pinMask = st.pinMask;
+        result.key = st.key;
+        result.keyHigh = st.keyHigh;
+        result.ply = st.ply;
+        result.lastMove = st.lastMove;
+        result.enemyAttacks = st.enemyAttacks;
+        result.enemyAttacksValid = st.enemyAttacksValid;
+        result.checkInfoValid = st.checkInfoValid;
+        result.fen = st.fen;
+        result.pawnKey = st.pawnKey;
+        result.materialKey = st.materialKey;
+        result.nonPawnKey[WHITE] = st.nonPawnKey[WHITE];
+        result.nonPawnKey[BLACK] = st.nonPawnKey[BLACK];
+        result.enemyKingSquare = st.enemyKingSquare;
+        result.enemyBlocker = st.enemyBlocker;
+        if (st.checkInfoValid) {
+            if (result.enemyCheckedSquares == null)
+                result.enemyCheckedSquares = new long[PieceType.VALUES_COUNT];
+            System.arraycopy(st.enemyCheckedSquares, 0, result.enemyCheckedSquares, 0, st.enemyCheckedSquares.length);
+        }
+    }
+
+    /**
+     * Allocates a new state stack with room for at least {@code minSize} states, of which the first
+     * {@code minSize} are created.
+     */
+    private void initStateStack(int minSize) {
+        stateStack = new PositionState[Math.max(INITIAL_STATE_STACK_SIZE, Integer.highestOneBit(minSize - 1) << 1)];
+        for (int i = 0; i < minSize; i++) {
+            stateStack[i] = new PositionState();
+        }
+    }
+
+    /**
+     * Returns the state for the next ply, growing the state stack when it is full and creating the state
+     * the first time the ply is reached.
+     */
+    private PositionState nextState() {
+        int next = stateIndex + 1;
+        if (next == stateStack.length) {
+            stateStack = Arrays.copyOf(stateStack, next * 2);
+        }
+        PositionState st = stateStack[next];
+        if (st == null) {
+            st = stateStack[next] = new PositionState();
+        }
+        return st;
+    }
+
     /**
      * Sets the position state based on the given FEN (Forsyth–Edwards Notation) string, along with additional
      * information about castling, en passant, rule50, and full move count. Assumes the provided FEN is valid.
@@ -164,47 +473,90 @@ public class Position {
      * @throws IllegalPositionException if the FEN represents an invalid or illegal chess position.
      */
     public void setFen(String fen) throws IllegalPositionException{
-        assert FenValidation.isValidFenSyntax(fen);
-
-        // 0. pars fen
-        String[] fenParts = splitFen(fen);
-        String boardFen = fenParts[0], colorFen = fenParts[1], castlingFen = fenParts[2],
-                epFen = fenParts[3], rule50Fen = fenParts[4], fullMoveCountFen = fenParts[5];
+        reset(fen);
+    }
 
-        // 0. init class main data
-        repetitionList = new byte[REPETITION_TABLE_SIZE]; // 2^14;
-//        isChess960 = isChess960Mod;
-        state = new PositionState();
-        sideToMove = Side.valueBy(colorFen.charAt(0));
-        numMoves = 2 * (Integer.parseInt(fullMoveCountFen) - 1) + sideToMove; // num moves start from 0
+    /**
+     * Sets up the position from a FEN like {@link #setFen(String)}, but from any {@link CharSequence}
+     * (for example a reused {@link StringBuilder} or a {@link java.nio.CharBuffer} over a request body).
+     * The FEN is read in a single pass and the arrays of the position are reused, so a reset creates no garbage.
+     * <p>
+     * If an exception is thrown, the position is left half set up and must be reset again before it is used.
+     *
+     * @param fen the FEN of the position
+     * @throws IllegalPositionException if the FEN has a syntax error or represents an illegal chess position
+     */
+    public void reset(CharSequence fen) throws IllegalPositionException {
+        FenReader.read(fen, this);
+    }
 
-        // 1. reset the board
+    /**
+     * First step of setting up a position: clears the board, the castling tables and the history.
+     * The pieces are then placed with {@link #addPiece}, checked with {@link #validateBoard()},
+     * the castling rights added with {@link #addCastlingRight} and the setup completed by {@link #finishSetup}.
+     */
+    void resetBoard() {
         occupancyBB = 0;
-        occupancyBySideBB = new long[Side.VALUES_COUNT];
-        occupancyByPieceBB = new long[Piece.VALUES_COUNT];
-        occupancyByTypeBB = new long[PieceType.VALUES_COUNT];
-        board = new int[Square.VALUES_COUNT];
-        piecesCount = new int[Piece.VALUES_COUNT];
-
-        castlingOptionsMask = new int[Square.VALUES_COUNT];
-        castlingDestSquareKing = new int[Square.VALUES_COUNT];
-        castlingDestSquareRook = new int[Square.VALUES_COUNT];
-        castlingPath = new long[Square.VALUES_COUNT];
-        castlingKingPath = new long[Square.VALUES_COUNT];
-        castlingMoves = new int[Castling.SIZE];
-
-        // 2. set the board
-        int square = A8;
-        for (char c : boardFen.toCharArray()) {
-            if (c == '/')
-                square = square - 2 * Rank.VALUES_COUNT; // go down in a rank
-            else if (Character.isDigit(c))
-                square += Character.getNumericValue(c);
-            else // add piece and advance square
-                addPiece(Piece.valueBy(c), square++);
+        isChess960 = true; // for begineng try to found any 960 castling
+
+        if (repetitions == null) {
+            repetitions = RepetitionTracker.ring();
+        }
+        repetitions.clear();
+
+        if (board == null) {
+            // init class main data
+            initStateStack(1);
+
+            occupancyBySideBB = new long[Side.VALUES_COUNT];
+            occupancyByPieceBB = new long[Piece.VALUES_COUNT];
+            occupancyByTypeBB = new long[PieceType.VALUES_COUNT];
+            board = new int[Square.VALUES_COUNT];
+            piecesCount = new int[Piece.VALUES_COUNT];
+
+            castlingOptionsMask = new int[Square.VALUES_COUNT];
+            castlingDestSquareKing = new int[Square.VALUES_COUNT];
+            castlingDestSquareRook = new int[Square.VALUES_COUNT];
+            castlingPath = new long[Square.VALUES_COUNT];
+            castlingKingPath = new long[Square.VALUES_COUNT];
+            castlingMoves = new int[Castling.SIZE];
+        } else {
+            // setting up again: reuse the arrays (and the state stack) instead of allocating new ones
+            Arrays.fill(occupancyBySideBB, 0);
+            Arrays.fill(occupancyByPieceBB, 0);
+            Arrays.fill(occupancyByTypeBB, 0);
+            Arrays.fill(board, 0);
+            Arrays.fill(piecesCount, 0);
+
+            Arrays.fill(castlingOptionsMask, 0);
+            Arrays.fill(castlingDestSquareKing, 0);
+            Arrays.fill(castlingDestSquareRook, 0);
+            Arrays.fill(castlingPath, 0);
+            Arrays.fill(castlingKingPath, 0);
+            Arrays.fill(castlingMoves, 0);
         }
 
-        // validate kings counts and pawn placement:
+        stateIndex = 0;
+        state = stateStack[0];
+        // the setup accumulates into the key and the castling rights of the root state
+        state.key = 0;
+        state.keyHigh = 0;
+        state.pawnKey = 0;
+        state.materialKey = 0;
+        state.nonPawnKey[WHITE] = 0;
+        state.nonPawnKey[BLACK] = 0;
+        state.castlingRights = 0;
+        state.enemyAttacksValid = false;
+        state.checkInfoValid = false;
+        state.fen = null;
+    }
+
+    /**
+     * Validates the kings count and the pawn placement of the board, and prepares the castling masks of the kings.
+     *
+     * @throws IllegalPositionException if a side has not exactly one king or a pawn stands on the first or last rank
+     */
+    void validateBoard() throws IllegalPositionException {
         if (pieceCount(WHITE_KING) != 1 || pieceCount(BLACK_KING) != 1){
             throw new IllegalPositionException("Invalid number of kings");
         }
@@ -213,80 +565,74 @@ public class Position {
             throw new IllegalPositionException("Pawn on first or last rank");
         }
 
-
-        int[] kingsSquares = {squareOf(WHITE_KING), squareOf(BLACK_KING)};
-
-        // 3. set castling info. this method ignore the castling right if is not available on the board
-        // so position base be with valid castling rights.
-        isChess960 = true; // for begineng try to found any 960 castling
-        int castlingRights = 0;
         Arrays.fill(castlingOptionsMask, ALL_CASTLING);
+        castlingOptionsMask[squareOf(WHITE_KING)] = ALL_CASTLING - (WHITE_SHORT | WHITE_LONG);
+        castlingOptionsMask[squareOf(BLACK_KING)] = ALL_CASTLING - (BLACK_SHORT | BLACK_LONG);
+    }
 
-        castlingOptionsMask[kingsSquares[WHITE]] = ALL_CASTLING - (WHITE_SHORT | WHITE_LONG);
-        castlingOptionsMask[kingsSquares[BLACK]] = ALL_CASTLING - (BLACK_SHORT | BLACK_LONG);
-
-        char[] castlingChars = castlingFen.toCharArray();
-        Arrays.sort(castlingChars);
-
-        for (char c : castlingChars) {
-            int side = Character.isUpperCase(c) ? WHITE : BLACK;
-            c = Character.toLowerCase(c);
-
-            int rookSq, kingSq = kingsSquares[side];
-            int relativeRank = Rank.flippedIfBlack(side, RANK_1);
-            long rooksOnFirstRank = occupancyBySideAndType(side, ROOK) & Bitboard.rankBB(relativeRank);
-
-            // find the rookSq square, that made the castle.
-            if (c == 'k') {
-                rookSq = Bitboard.msbToSquare(rooksOnFirstRank);
-            } else if (c == 'q') {
-                rookSq = Bitboard.lsbToSquare(rooksOnFirstRank); // rook sq might be NULL_SQUARE and its verify on function isCastlingAvailableOnPosition
-            } else if (c >= 'a' && c <= 'h')
-                rookSq = Square.valueBy(File.getBy(c), Rank.flippedIfBlack(side, Rank.RANK_1));
-            else break; // c = "-"
-
-            int castleRight = rookSq > kingSq ? shortCastling(side) : longCastling(side);
-
-            // Avoid adding duplicate short/long castling rights for the same side.
-            // Only set the first valid castling right found, and ensure it is actually
-            // possible on the current board position; otherwise, skip it.
-            if ((castlingRights & castleRight) == 0 && isCastlingAvailableOnPosition(castleRight, kingSq, rookSq)) { // todo make shure that check not make bug
-
-                int destKing = isShortCastle(castleRight) ? Square.flippedIfBlack(side, G1) : Square.flippedIfBlack(side, C1);
-                int destRook = isShortCastle(castleRight) ? Square.flippedIfBlack(side, F1) : Square.flippedIfBlack(side, D1);
-
-                //update castle right info
-                castlingRights += castleRight;
-                castlingOptionsMask[rookSq] = ALL_CASTLING - castleRight;
-                castlingDestSquareKing[rookSq] = destKing;
-                castlingDestSquareRook[rookSq] = destRook;
-                castlingKingPath[rookSq] = pathBetween(kingSq, destKing) & ~squareToBB(kingSq);
-                castlingPath[rookSq] = (castlingKingPath[rookSq] | pathBetween(rookSq, destRook)) & ~squareToBB(rookSq);
-                castlingMoves[castleRight] = Move.create(kingSq, rookSq, CASTLING);
-            }
+    /**
+     * Adds the castling right of {@code side} with the rook on {@code rookSq}, short or long depending on the side
+     * of the king the rook stands on. The right is ignored if the side already has it, or if the king and the rook
+     * do not allow it on the board.
+     *
+     * @param side   the side that may castle
+     * @param rookSq the square of the castling rook
+     */
+    void addCastlingRight(int side, int rookSq) {
+        int kingSq = squareOf(side, KING);
+        int castleRight = rookSq > kingSq ? shortCastling(side) : longCastling(side);
+
+        // Avoid adding duplicate short/long castling rights for the same side.
+        // Only set the first valid castling right found, and ensure it is actually
+        // possible on the current board position; otherwise, skip it.
+        if ((state.castlingRights & castleRight) == 0 && isCastlingAvailableOnPosition(castleRight, kingSq, rookSq)) { // todo make shure that check not make bug
+
+            int destKing = isShortCastle(castleRight) ? Square.flippedIfBlack(side, G1) : Square.flippedIfBlack(side, C1);
+            int destRook = isShortCastle(castleRight) ? Square.flippedIfBlack(side, F1) : Square.flippedIfBlack(side, D1);
+
+            //update castle right info
+            state.castlingRights += castleRight;
+            castlingOptionsMask[rookSq] = ALL_CASTLING - castleRight;
+            castlingDestSquareKing[rookSq] = destKing;
+            castlingDestSquareRook[rookSq] = destRook;
+            castlingKingPath[rookSq] = pathBetween(kingSq, destKing) & ~squareToBB(kingSq);
+            castlingPath[rookSq] = (castlingKingPath[rookSq] | pathBetween(rookSq, destRook)) & ~squareToBB(rookSq);
+            castlingMoves[castleRight] = Move.create(kingSq, rookSq, CASTLING);
         }
+    }
 
+    /**
+     * Last step of setting up a position: fills the root state (king info, en passant, key, repetition)
+     * and checks that the side not to move is not in check.
+     *
+     * @param side           the side to move
+     * @param fullMoveNumber the full move number, starting from 1
+     * @param enSq           the en passant square, or NULL_SQUARE. It is ignored if no en passant capture is possible.
+     * @param rule50         the half move clock
+     * @throws IllegalPositionException if the king of the side not to move is attacked
+     */
+    void finishSetup(int side, int fullMoveNumber, int enSq, int rule50) throws IllegalPositionException {
+        sideToMove = side;
+        numMoves = 2 * (fullMoveNumber - 1) + sideToMove; // num moves start from 0
         isChess960 = hasChess960CastlingAvailable(); // after we set castling need to check
 
-        // 4. set epPassant sq.
-        int enSq = "-".equals(epFen) ? NULL_SQUARE : Square.valueBy(epFen);
-
-        // 5. set state
-        state.rule50 = Integer.parseInt(rule50Fen);
-        state.kingSquare = kingsSquares[sideToMove];
+        state.rule50 = rule50;
+        state.kingSquare = squareOf(sideToMove, KING);
         state.capturedPiece = NULL_PIECE;
         state.numRepetition = 0;
         state.ply = 0;
         state.previous = null;
-        state.castlingRights = castlingRights;
         state.checkers = attackersBB(Side.flipped(sideToMove), state.kingSquare, occupancyBB);
         state.pinMask = pinMask(Side.flipped(sideToMove), state.kingSquare);
         state.enPassant = isValidEpSquare(enSq) ? enSq : NULL_SQUARE;
 
-        state.key ^= ((sideToMove * colorKey) ^ enPassantKeys[state.enPassant] ^ castlingKeys[castlingRights]);
+        state.key ^= ((sideToMove * colorKey) ^ enPassantKeys[state.enPassant] ^ castlingKeys[state.castlingRights]);
+        if (WIDE_KEYS)
+            state.keyHigh ^= (sideToMove * colorKeyHigh) ^ enPassantKeysHigh[state.enPassant]
+                    ^ castlingKeysHigh[state.castlingRights];
         state.lastMove = NULL_MOVE;
 
-        ++repetitionList[(int) (REPETITION_MASK & state.key)];
+        repetitions.push(state.key, 0);
 
         // The opponent side to move must not be in check.
         if (attackersBB(sideToMove, squareOf(Side.flipped(sideToMove), KING), occupancy()) != 0)
@@ -420,8 +766,15 @@ public class Position {
     // Make/undo move handling
     // =======================
 
+    /**
+     * Executes a legal move using the position's own preallocated state for the next ply (no allocation).
+     * The state object is reused once the move is undone, so references obtained from {@link #getState()}
+     * are only valid while the move is on the board.
+     *
+     * @param move Encoded representation of the move.
+     */
     public void makeMove(int move) {
-        makeMove(move, new PositionState());
+        makeMove(move, nextState());
     }
 
     /**
@@ -466,23 +819,35 @@ public class Position {
 
         newState.capturedPiece = NULL_PIECE;
         newState.enPassant = NULL_SQUARE;
+        newState.enemyAttacksValid = false;
+        newState.checkInfoValid = false;
+        newState.fen = null;
         newState.rule50 = state.rule50 + 1;
 
         newState.ply = state.ply + 1;
         newState.castlingRights = state.castlingRights; // todo
         newState.key = state.key ^ enPassantKeys[state.enPassant] ^ colorKey; // Note: enPassantKeys[NULL_SQUARE] = 0
+        if (WIDE_KEYS)
+            newState.keyHigh = state.keyHigh ^ enPassantKeysHigh[state.enPassant] ^ colorKeyHigh;
+        newState.pawnKey = state.pawnKey;
+        newState.materialKey = state.materialKey;
+        newState.nonPawnKey[WHITE] = state.nonPawnKey[WHITE];
+        newState.nonPawnKey[BLACK] = state.nonPawnKey[BLACK];
 
         // Update castling key if needed and update castling rights
         if (state.castlingRights != 0
                 && (state.castlingRights & castlingOptionsMask[start] & castlingOptionsMask[dest]) != state.castlingRights) {
             newState.castlingRights &= (castlingOptionsMask[start] & castlingOptionsMask[dest]);
             newState.key ^= (castlingKeys[state.castlingRights] ^ castlingKeys[newState.castlingRights]);
+            if (WIDE_KEYS)
+                newState.keyHigh ^= castlingKeysHigh[state.castlingRights] ^ castlingKeysHigh[newState.castlingRights];
         }
 
         // Update the state. This must be called before the board update because the remove-add-move piece method
         // changes the key of the state. It establishes the new state as the current state for subsequent updates.
         newState.previous = state;
         state = newState;
+        ++stateIndex;
         sideToMove = Side.flipped(sideToMove);
         numMoves++;
 
@@ -494,6 +859,60 @@ public class Position {
             removePiece(dest);
             state.rule50 = 0;
         }
+        // The rest of 2, and 3, per side
+        if (sideMoved == WHITE)
+            makeWhiteMove(move, start, dest, moveType);
+        else
+            makeBlackMove(move, start, dest, moveType);
+        state.lastMove = move;
+
+
+        // Update repetition information to handle threefold repetition rule
+        updateRepetition();
+
+        // Ensure the resulting position is legal
+        assert positionIsLegal() : positionIsLegalOrThrow();
+    }
+
+    /**
+     * Undoes the last chess move in the current position and reverts the internal state accordingly.
+     * Assumes that the move is legal and has been previously made using the makeMove method.
+     */
+    public void undoMove() {
+        // first remove the key from the repetition tracker (before it change)
+        repetitions.pop(state.key);
+
+        int move = state.lastMove;
+        assert move != NULL_MOVE;
+
+        int start = startSquare(move);
+        int dest = destSquare(move);
+        int moveType = moveType(move);
+
+        // 1: Revert the board (see undoWhiteMove and undoBlackMove)
+        if (sideToMove == BLACK)
+            undoWhiteMove(start, dest, moveType);
+        else
+            undoBlackMove(start, dest, moveType);
+
+        // 2: Revert data
+        // This section updates information related to the side to move, the number of moves, and the position state.
+        sideToMove = Side.flipped(sideToMove);
+        --numMoves;
+
+        state = state.previous;
+        --stateIndex;
+
+        // 3: Ensure the resulting position is legal
+        assert positionIsLegal() : positionIsLegalOrThrow();
+    }
+
+    /**
+     * Step 2 and 3 of {@link #makeMove(int, PositionState)} for a move of white, after its capture is removed:
+     * moves the pieces and computes the king data of black, now to move. The sides, the pawn direction and the
+     * pieces are constants here, so there is no side lookup; {@link #makeBlackMove} is the same for black.
+     */
+    private void makeWhiteMove(int move, int start, int dest, int moveType) {
         if (moveType == NORMAL) {
             movePiece(start, dest);
         } else if (moveType == NORMAL_PAWN_MOVE) {
@@ -501,22 +920,24 @@ public class Position {
             state.rule50 = 0;
         } else if (moveType == Move.PAWN_PUSH_TWICE) {
             movePiece(start, dest);
-            int epSquare = start + Direction.forward(sideMoved);
-            if ((occupancyBySideAndType(sideToMove, PAWN) & pawnAttacks(sideMoved, epSquare)) != 0) {
+            int epSquare = start + Direction.UP;
+            if ((occupancyByPieceBB[BLACK_PAWN] & pawnAttacks(WHITE, epSquare)) != 0) {
                 state.enPassant = epSquare;
                 state.key ^= enPassantKeys[epSquare];
+                if (WIDE_KEYS)
+                    state.keyHigh ^= enPassantKeysHigh[epSquare];
             }
             state.rule50 = 0;
         } else if (moveType == Move.CASTLING) { // Note: Castling move encoded dest to sq of rook
             movePiece(start, castlingDestSquareKing[dest]);
             movePiece(dest, castlingDestSquareRook[dest]);
         } else if (moveType == Move.PROMOTION) {
-            addPiece(Piece.valueBy(sideMoved, promotePT(move)), dest);
+            addPiece(Piece.valueBy(WHITE, promotePT(move)), dest);
             removePiece(start);
             state.rule50 = 0;
         } else if (moveType == Move.EN_PASSANT) {
-            int captureSq = dest - Direction.forward(sideMoved);
-            state.capturedPiece = getPiece(captureSq);
+            int captureSq = dest - Direction.UP;
+            state.capturedPiece = BLACK_PAWN;
 
             removePiece(captureSq);
             movePiece(start, dest);
@@ -524,40 +945,70 @@ public class Position {
             state.rule50 = 0;
         }
 
-        // 3: Update the current king data info
-
-        int kingSq = squareOf(sideToMove, KING);
+        // the king data of black; only the pieces of white can give check, and a king never does
+        int kingSq = lsbToSquare(occupancyByPieceBB[BLACK_KING]);
+        long queens = occupancyByPieceBB[WHITE_QUEEN];
         state.kingSquare = kingSq;
-        state.checkers = attackersBB(sideMoved, kingSq, occupancyBB);
-        state.pinMask = pinMask(Side.flipped(sideToMove), kingSq);
-        state.lastMove = move;
-
-
-        // Update repetition information to handle threefold repetition rule
-        updateRepetition();
-
-        // Ensure the resulting position is legal
-        assert positionIsLegal() : positionIsLegalOrThrow();
+        state.checkers = (pawnAttacks(BLACK, kingSq) & occupancyByPieceBB[WHITE_PAWN])
+                | (knightAttacks(kingSq) & occupancyByPieceBB[WHITE_KNIGHT])
+                | (bishopAttacks(kingSq, occupancyBB) & (occupancyByPieceBB[WHITE_BISHOP] | queens))
+                | (rookAttacks(kingSq, occupancyBB) & (occupancyByPieceBB[WHITE_ROOK] | queens));
+        state.pinMask = pinMask(WHITE, kingSq);
     }
 
     /**
-     * Undoes the last chess move in the current position and reverts the internal state accordingly.
-     * Assumes that the move is legal and has been previously made using the makeMove method.
+     * Step 2 and 3 of {@link #makeMove(int, PositionState)} for a move of black, after its capture is removed:
+     * moves the pieces and computes the king data of white, now to move. The sides, the pawn direction and the
+     * pieces are constants here, so there is no side lookup; {@link #makeWhiteMove} is the same for white.
      */
-    public void undoMove() {
-        // first remove the key fromm repetitionList (before it change)
-        --repetitionList[(int) (state.key & REPETITION_MASK)];
+    private void makeBlackMove(int move, int start, int dest, int moveType) {
+        if (moveType == NORMAL) {
+            movePiece(start, dest);
+        } else if (moveType == NORMAL_PAWN_MOVE) {
+            movePiece(start, dest);
+            state.rule50 = 0;
+        } else if (moveType == Move.PAWN_PUSH_TWICE) {
+            movePiece(start, dest);
+            int epSquare = start + Direction.DOWN;
+            if ((occupancyByPieceBB[WHITE_PAWN] & pawnAttacks(BLACK, epSquare)) != 0) {
+                state.enPassant = epSquare;
+                state.key ^= enPassantKeys[epSquare];
+                if (WIDE_KEYS)
+                    state.keyHigh ^= enPassantKeysHigh[epSquare];
+            }
+            state.rule50 = 0;
+        } else if (moveType == Move.CASTLING) { // Note: Castling move encoded dest to sq of rook
+            movePiece(start, castlingDestSquareKing[dest]);
+            movePiece(dest, castlingDestSquareRook[dest]);
+        } else if (moveType == Move.PROMOTION) {
+            addPiece(Piece.valueBy(BLACK, promotePT(move)), dest);
+            removePiece(start);
+            state.rule50 = 0;
+        } else if (moveType == Move.EN_PASSANT) {
+            int captureSq = dest - Direction.DOWN;
+            state.capturedPiece = WHITE_PAWN;
 
-        int move = state.lastMove;
-        assert move != NULL_MOVE;
+            removePiece(captureSq);
+            movePiece(start, dest);
 
-        int start = startSquare(move);
-        int dest = destSquare(move);
-        int moveType = moveType(move);
+            state.rule50 = 0;
+        }
 
-        // 1: Revert the board
-        // This section handles different move types, such as normal moves, castling, en passant, pawn promotions, etc.
-        // It involves moving, un capturing, and demoting pieces on the board to their original positions.
+        // the king data of white; only the pieces of black can give check, and a king never does
+        int kingSq = lsbToSquare(occupancyByPieceBB[WHITE_KING]);
+        long queens = occupancyByPieceBB[BLACK_QUEEN];
+        state.kingSquare = kingSq;
+        state.checkers = (pawnAttacks(WHITE, kingSq) & occupancyByPieceBB[BLACK_PAWN])
+                | (knightAttacks(kingSq) & occupancyByPieceBB[BLACK_KNIGHT])
+                | (bishopAttacks(kingSq, occupancyBB) & (occupancyByPieceBB[BLACK_BISHOP] | queens))
+                | (rookAttacks(kingSq, occupancyBB) & (occupancyByPieceBB[BLACK_ROOK] | queens));
+        state.pinMask = pinMask(BLACK, kingSq);
+    }
+
+    /**
+     * Step 1 of {@link #undoMove()} for a move of white: puts its pieces back and restores the captured piece.
+     */
+    private void undoWhiteMove(int start, int dest, int moveType) {
         if (Move.isNormalPieceAndPawnOrPushTwice(moveType)) //moveType == NORMAL || moveType == NORMAL_PAWN_MOVE || moveType == PAWN_PUSH_TWICE
             movePiece(dest, start);
 
@@ -566,29 +1017,42 @@ public class Position {
             movePiece(castlingDestSquareRook[dest], dest); // Move the rook back to its original square
         } else if (moveType == Move.PROMOTION) {
             // Demote the promoted piece back to a pawn and add the original piece back to its square
-            addPiece(Piece.valueBy(Side.flipped(sideToMove), PAWN), start);
+            addPiece(WHITE_PAWN, start);
             removePiece(dest);
         } else if (moveType == Move.EN_PASSANT) {
-            // In en passant moves, state.capturedPiece is encoded as Piece.NO_PIECE
             // Un capture the pawn and move it back to its original square
-//            addPiece(Piece.flipped(getPiece(dest)), dest + Direction.Direction.forward(sideToMove));
             movePiece(dest, start);
-            dest = dest + Direction.forward(sideToMove); // override dest to add the captured pawn on right place
+            dest = dest - Direction.UP; // override dest to add the captured pawn on right place
         }
 
         // If a piece was captured during the move, add it back to its original square
         if (state.capturedPiece != NULL_PIECE)
             addPiece(state.capturedPiece, dest);
+    }
 
-        // 2: Revert data
-        // This section updates information related to the side to move, the number of moves, and the position state.
-        sideToMove = Side.flipped(sideToMove);
-        --numMoves;
+    /**
+     * Step 1 of {@link #undoMove()} for a move of black: puts its pieces back and restores the captured piece.
+     */
+    private void undoBlackMove(int start, int dest, int moveType) {
+        if (Move.isNormalPieceAndPawnOrPushTwice(moveType)) //moveType == NORMAL || moveType == NORMAL_PAWN_MOVE || moveType == PAWN_PUSH_TWICE
+            movePiece(dest, start);
 
-        state = state.previous;
+        else if (moveType == Move.CASTLING) {
+            movePiece(castlingDestSquareKing[dest], start);
+            movePiece(castlingDestSquareRook[dest], dest); // Move the rook back to its original square
+        } else if (moveType == Move.PROMOTION) {
+            // Demote the promoted piece back to a pawn and add the original piece back to its square
+            addPiece(BLACK_PAWN, start);
+            removePiece(dest);
+        } else if (moveType == Move.EN_PASSANT) {
+            // Un capture the pawn and move it back to its original square
+            movePiece(dest, start);
+            dest = dest - Direction.DOWN; // override dest to add the captured pawn on right place
+        }
 
-        // 3: Ensure the resulting position is legal
-        assert positionIsLegal() : positionIsLegalOrThrow();
+        // If a piece was captured during the move, add it back to its original square
+        if (state.capturedPiece != NULL_PIECE)
+            addPiece(state.capturedPiece, dest);
     }
 
     // =======================
@@ -710,9 +1174,10 @@ public class Position {
         int start = startSquare(move);
         int dest = destSquare(move);
         int ksq = state.kingSquare;
-        // In case of the king move, check if the destination square is safe.
+        // In case of the king move, check if the destination square is safe. The enemy attack map is computed
+        // through the king, so squares behind it on a slider's line count as attacked.
         if (start == ksq)
-            return attackersBB(Side.flipped(sideToMove), dest, occupancyBB ^ squareToBB(ksq)) == 0;
+            return (enemyAttacks() & squareToBB(dest)) == 0;
         // Make sure the move doesn't leave the king in check.
         // First, check for double check — in that case, only king moves are legal, and since we already returned if king moved, return false.
         // Otherwise, there's only one checker, so calculate the path mask and check if the destination square blocks the check.
@@ -750,13 +1215,10 @@ public class Position {
         // king can not be in a check and all castling path must be empty.
         if (state.checkers != 0 || (castlingPath[dest] & occupancyBB) != 0) return false;
 
-        int enemySide = Side.flipped(sideToMove);
-        long kingPath = castlingKingPath[dest];
-
-        // loop over all the square in castling king path and check if the enemy threatening them.
-        for (; kingPath != 0; kingPath = popLsb(kingPath))
-            if (attackersBB(enemySide, lsbToSquare(kingPath), occupancyBB) != 0)
-                return false;
+        // no square of the king path may be attacked. Seeing through the king makes no difference here,
+        // a slider attacking through the king would already give check.
+        if ((castlingKingPath[dest] & enemyAttacks()) != 0)
+            return false;
 
         // to include the case of chess 960 that calling rook pin to the king,
         // for example enemy queen on a1 rook on b1 and king on c1
@@ -971,49 +1433,122 @@ public class Position {
     }
 
     /**
-     * Generates and returns the Forsyth–Edwards Notation (FEN) string representation of the current chess position.
+     * Generates the FEN (Forsyth-Edwards Notation) string representing the current position.
      * The FEN string includes information about the board, side to move, castling rights, en passant square,
      * half-move clock, and full-move number.
+     * <p>
+     * The FEN is cached in the current {@link PositionState}, so reading it again before the next move
+     * costs nothing. It is written into a local buffer, so concurrent readers of an unchanging position are safe:
+     * at worst both write the same immutable string to the cache.
      *
      * @return FEN string representation of the current position
      */
     public String getFen() {
-        StringBuilder boardFen = new StringBuilder(); // FEN for the board state
-        StringBuilder CFen = new StringBuilder();   // FEN for castling rights
-        int piece;
-        int numEmptySq = 0;
+        String fen = state.fen;
+        if (fen == null) {
+            char[] buf = new char[MAX_FEN_LENGTH];
+            fen = state.fen = new String(buf, 0, writeFen(buf));
+        }
+        return fen;
+    }
 
-        // Loop over all the ranks on the board from black side to white side
-        for (int square = A1; square <= H8; ++square) {
-            if ((piece = getPiece(Square.flipped(square))) != NULL_PIECE) {
-                boardFen.append(numEmptySq != 0 ? numEmptySq : "").append(Piece.getName(piece));
-                numEmptySq = 0;
-            } else
-                numEmptySq++;
-
-            if (Square.file(Square.flipped(square)) == FILE_H) { // Check if it's the last square in a rank
-                boardFen.append(numEmptySq != 0 ? numEmptySq : "").append(square == H8 ? "" : "/");
-                numEmptySq = 0;
+    /**
+     * Appends the FEN of the current position to {@code out}, without creating the FEN string
+     * (unless it is already cached, see {@link #getFen()}).
+     *
+     * @param out where to append the FEN
+     * @throws IOException if {@code out} throws it
+     */
+    public void appendFen(Appendable out) throws IOException {
+        if (state.fen != null) {
+            out.append(state.fen);
+            return;
+        }
+        char[] buf = new char[MAX_FEN_LENGTH];
+        int length = writeFen(buf);
+        if (out instanceof StringBuilder sb) {
+            sb.append(buf, 0, length);
+        } else {
+            for (int i = 0; i < length; i++) {
+                out.append(buf[i]);
+            }
+        }
+    }
+
+    /**
+     * Writes the FEN of the current position into {@code buf}, starting at index 0.
+     *
+     * @param buf the destination, at least {@link #MAX_FEN_LENGTH} chars long for any position
+     * @return the number of chars written
+     */
+    public int writeFen(char[] buf) {
+        int index = 0;
+
+        // the board, from rank 8 down to rank 1
+        for (int rank = RANK_8; rank >= RANK_1; --rank) {
+            int numEmptySq = 0;
+            for (int file = FILE_A; file <= FILE_H; ++file) {
+                int piece = board[Square.valueBy(file, rank)];
+                if (piece == NULL_PIECE) {
+                    ++numEmptySq;
+                } else {
+                    if (numEmptySq != 0)
+                        buf[index++] = (char) ('0' + numEmptySq);
+                    buf[index++] = PIECE_NAMES.charAt(piece);
+                    numEmptySq = 0;
+                }
             }
+            if (numEmptySq != 0)
+                buf[index++] = (char) ('0' + numEmptySq);
+            if (rank != RANK_1)
+                buf[index++] = '/';
         }
 
-        // Calculate the castling FEN
-        if (canCastle(WHITE_SHORT))
-            CFen.append(isChess960 ? Character.toUpperCase(File.getName(castlingRookFile(WHITE_SHORT))) : "K");
-        if (canCastle(WHITE_LONG))
-            CFen.append(isChess960 ? Character.toUpperCase(File.getName(castlingRookFile(WHITE_LONG))) : "Q");
-        if (canCastle(BLACK_SHORT))
-            CFen.append(isChess960 ? File.getName(castlingRookFile(BLACK_SHORT)) : "k");
-        if (canCastle(BLACK_LONG))
-            CFen.append(isChess960 ? File.getName(castlingRookFile(BLACK_LONG)) : "q");
-        if (state.castlingRights == 0)
-            CFen.append("-");
+        buf[index++] = ' ';
+        buf[index++] = Side.getName(sideToMove);
+        buf[index++] = ' ';
+
+        // castling rights: the rook file in Chess960, KQkq otherwise
+        if (state.castlingRights == 0) {
+            buf[index++] = '-';
+        } else {
+            if (canCastle(WHITE_SHORT))
+                buf[index++] = isChess960 ? (char) ('A' + castlingRookFile(WHITE_SHORT)) : 'K';
+            if (canCastle(WHITE_LONG))
+                buf[index++] = isChess960 ? (char) ('A' + castlingRookFile(WHITE_LONG)) : 'Q';
+            if (canCastle(BLACK_SHORT))
+                buf[index++] = isChess960 ? (char) ('a' + castlingRookFile(BLACK_SHORT)) : 'k';
+            if (canCastle(BLACK_LONG))
+                buf[index++] = isChess960 ? (char) ('a' + castlingRookFile(BLACK_LONG)) : 'q';
+        }
+        buf[index++] = ' ';
 
-        String enPassant = enPassant() == NULL_SQUARE ? "-" : Square.getName(enPassant());
+        if (enPassant() == NULL_SQUARE) {
+            buf[index++] = '-';
+        } else {
+            buf[index++] = (char) ('a' + Square.file(enPassant()));
+            buf[index++] = (char) ('1' + Square.rank(enPassant()));
+        }
+        buf[index++] = ' ';
 
-        // Format and return the complete FEN string
-        return String.format("%s %c %s %s %d %d", boardFen, Side.getName(sideToMove),
-                CFen, enPassant, state.rule50, getNumMoves());
+        index = writeNumber(buf, index, state.rule50);
+        buf[index++] = ' ';
+        return writeNumber(buf, index, getNumMoves());
+    }
+
+    /**
+     * Writes the decimal digits of a non-negative number.
+     *
+     * @return the index after the last digit
+     */
+    private static int writeNumber(char[] buf, int index, int value) {
+        int end = index + (value == 0 ? 1 : (int) Math.log10(value) + 1);
+        int i = end;
+        do {
+            buf[--i] = (char) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+        return end;
     }
 
 
@@ -1026,6 +1561,49 @@ public class Position {
         return (numMoves / 2) + 1;
     }
 
+    /**
+     * Writes the 128-bit key of the position: {@code dst[offset]} is the high half, {@code dst[offset + 1]} the low
+     * half (the usual 64-bit {@link PositionState#key}).
+     *
+     * @throws IllegalStateException if the JVM was not started with {@code -Dchesslib.wideKeys=true}
+     */
+    public void key128(long[] dst, int offset) {
+        dst[offset] = keyHigh();
+        dst[offset + 1] = state.key;
+    }
+
+    /**
+     * @return the high half of the 128-bit key of the position (see {@link #key128(long[], int)})
+     * @throws IllegalStateException if the JVM was not started with {@code -Dchesslib.wideKeys=true}
+     */
+    public long keyHigh() {
+        if (!WIDE_KEYS)
+            throw new IllegalStateException("128-bit keys are off, start the JVM with -Dchesslib.wideKeys=true");
+        return state.keyHigh;
+    }
+
+    /**
+     * @return the key of the pawn placement of both sides, for pawn structure caches
+     */
+    public long pawnKey() {
+        return state.pawnKey;
+    }
+
+    /**
+     * @return the key of the number of pieces of every kind, for material and endgame caches
+     */
+    public long materialKey() {
+        return state.materialKey;
+    }
+
+    /**
+     * @param side the side of the pieces
+     * @return the key of the placement of the pieces other than pawns (king included) of one side
+     */
+    public long nonPawnKey(int side) {
+        return state.nonPawnKey[side];
+    }
+
 
     // =======================
     // Misc getters (non-bitboard/basic)
@@ -1074,6 +1652,321 @@ public class Position {
         return occupancyBySideBB[attacksSide] & attackersBB(square, occupancy);
     }
 
+    /**
+     * Returns all squares attacked by the side not to move. The king of the side to move does not block the
+     * sliders, so a king move is legal exactly when its destination is not in this bitboard.
+     * The bitboard is computed on the first call in a position and then kept in the position state.
+     *
+     * @return the squares attacked by the enemy
+     */
+    public long enemyAttacks() {
+        if (!state.enemyAttacksValid) {
+            state.enemyAttacks = attacksBySide(Side.flipped(sideToMove), occupancyBB ^ squareToBB(state.kingSquare));
+            state.enemyAttacksValid = true;
+        }
+        return state.enemyAttacks;
+    }
+
+    /**
+     * Checks whether a legal move gives check, without making it.
+     * Uses the check squares of every piece type and the blockers of discovered checks on the enemy king,
+     * computed once per position on the first call.
+     *
+     * @param move a legal move in this position
+     * @return true if the move gives check
+     */
+    public boolean givesCheck(int move) {
+        assert isFullyLegalMove(move) : Move.getName(move) + "\n" + posString();
+        if (!state.checkInfoValid) {
+            updateCheckInfo();
+        }
+
+        int start = startSquare(move);
+        int dest = destSquare(move);
+        int moveType = moveType(move);
+        int enemyKingSq = state.enemyKingSquare;
+
+        // Direct check (castling is encoded as king takes rook, so it is handled below)
+        if (moveType != CASTLING && (state.enemyCheckedSquares[Piece.type(getPiece(start))] & squareToBB(dest)) != 0)
+            return true;
+
+        // Discovered check: a blocker leaves the line between one of our sliders and the enemy king
+        if ((state.enemyBlocker & occupancyBySide(sideToMove) & squareToBB(start)) != 0
+                && moveType != CASTLING && (lineThrough(start, enemyKingSq) & squareToBB(dest)) == 0)
+            return true;
+
+        switch (moveType) {
+            case PROMOTION:
+                return (attacks(promotePT(move), dest, occupancyBB ^ squareToBB(start)) & squareToBB(enemyKingSq)) != 0;
+            case EN_PASSANT: {
+                // the captured pawn leaves its square too, which may open a line to the enemy king
+                int captureSq = dest - Direction.forward(sideToMove);
+                long occupancy = (occupancyBB ^ squareToBB(start) ^ squareToBB(captureSq)) | squareToBB(dest);
+                return ((rookAttacks(enemyKingSq, occupancy) & occupancyBySideAndType(sideToMove, ROOK, QUEEN))
+                        | (bishopAttacks(enemyKingSq, occupancy) & occupancyBySideAndType(sideToMove, BISHOP, QUEEN))) != 0;
+            }
+            case CASTLING: {
+                int kingDest = castlingDestSquareKing[dest];
+                int rookDest = castlingDestSquareRook[dest];
+                long occupancy = (occupancyBB ^ squareToBB(start) ^ squareToBB(dest))
+                        | squareToBB(kingDest) | squareToBB(rookDest);
+                // both the rook and the king move (in chess960 the king may even uncover a slider), so test all sliders
+                long rooks = (occupancyBySideAndType(sideToMove, ROOK, QUEEN) ^ squareToBB(dest)) | squareToBB(rookDest);
+                return ((rookAttacks(enemyKingSq, occupancy) & rooks)
+                        | (bishopAttacks(enemyKingSq, occupancy) & occupancyBySideAndType(sideToMove, BISHOP, QUEEN))) != 0;
+            }
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Fills the check info of the current state: the enemy king square, the squares from which every piece type
+     * gives check, and the blockers of our sliders on the enemy king.
+     */
+    private void updateCheckInfo() {
+        int enemySide = Side.flipped(sideToMove);
+        int enemyKingSq = squareOf(enemySide, KING);
+        long[] checkSquares = state.enemyCheckedSquares;
+        if (checkSquares == null) {
+            // most states never answer givesCheck, so they do not carry the array
+            checkSquares = state.enemyCheckedSquares = new long[PieceType.VALUES_COUNT];
+        }
+        checkSquares[PAWN] = pawnAttacks(enemySide, enemyKingSq);
+        checkSquares[KNIGHT] = knightAttacks(enemyKingSq);
+        checkSquares[BISHOP] = bishopAttacks(enemyKingSq, occupancyBB);
+        checkSquares[ROOK] = rookAttacks(enemyKingSq, occupancyBB);
+        checkSquares[QUEEN] = checkSquares[BISHOP] | checkSquares[ROOK];
+        checkSquares[KING] = 0;
+
+        // our sliders on a line with the enemy king, with exactly one piece between them
+        long snipers = (rookAttacks(enemyKingSq) & occupancyBySideAndType(sideToMove, ROOK, QUEEN))
+                | (bishopAttacks(enemyKingSq) & occupancyBySideAndType(sideToMove, BISHOP, QUEEN));
+        long blockers = 0;
+        for (; snipers != 0; snipers &= (snipers - 1)) {
+            long between = pathBetween(enemyKingSq, lsbToSquare(snipers)) & occupancyBB & ~(snipers & -snipers);
+            if (between != 0 && !has2OrMoreBits(between))
+                blockers |= between;
+        }
+
+        state.enemyKingSquare = enemyKingSq;
+        state.enemyBlocker = blockers;
+        state.checkInfoValid = true;
+    }
+
+    /**
+     * Computes all squares attacked by one side with the given occupancy.
+     *
+     * @param side      the attacking side
+     * @param occupancy the bitboard representing the occupied squares
+     * @return the squares attacked by the side
+     */
+    public long attacksBySide(int side, long occupancy) {
+        long result = pawnAttacksBB(side, occupancyBySideAndType(side, PAWN));
+
+        for (long knights = occupancyBySideAndType(side, KNIGHT); knights != 0; knights &= (knights - 1))
+            result |= knightAttacks(lsbToSquare(knights));
+        for (long rooks = occupancyBySideAndType(side, ROOK, QUEEN); rooks != 0; rooks &= (rooks - 1))
+            result |= rookAttacks(lsbToSquare(rooks), occupancy);
+        for (long bishops = occupancyBySideAndType(side, BISHOP, QUEEN); bishops != 0; bishops &= (bishops - 1))
+            result |= bishopAttacks(lsbToSquare(bishops), occupancy);
+
+        return result | kingAttacks(squareOf(side, KING));
+    }
+
+    // =======================
+    // Static exchange evaluation
+    // =======================
+
+    /**
+     * Computes the static exchange evaluation of a legal move: the material balance, in pawn units, of the capture
+     * sequence on the destination square when both sides always recapture with their least valuable attacker and
+     * may stop whenever continuing would lose material. Sliders behind the capturing pieces (x-rays) join the
+     * exchange as soon as the pieces in front of them have captured. Pins are not taken into account, and a king
+     * only captures if the square is no longer defended.
+     * <p>
+     * Writes nothing, so several threads may evaluate moves of the same position while no move is made.
+     *
+     * @param move a legal move in this position
+     * @return the material gained by the side to move (negative if the move loses material); 0 for castling
+     */
+    public int see(int move) {
+        int moveType = moveType(move);
+        if (moveType == CASTLING)
+            return 0;
+
+        int start = startSquare(move);
+        int dest = destSquare(move);
+        long occupied = occupancyBB ^ squareToBB(start);
+        // the material of the side to move after the captures so far
+        int balance = seeCapturedValue(move);
+        // the result is the final balance clamped to [lo, hi]: every capture is only made if it is better for
+        // its side than stopping before it, which bounds the result from the side that would stop
+        int lo = Integer.MIN_VALUE, hi = Integer.MAX_VALUE;
+        int attackerValue = moveType == PROMOTION ? SEE_VALUES[promotePT(move)] : SEE_VALUES[Piece.type(getPiece(start))];
+        if (moveType == EN_PASSANT)
+            occupied ^= squareToBB(dest - Direction.forward(sideToMove));
+
+        long attackers = attackersBB(dest, occupied) & occupied;
+        int side = Side.flipped(sideToMove);
+        while (true) {
+            long sideAttackers = attackers & occupancyBySideBB[side];
+            if (sideAttackers == 0)
+                break;
+            int pieceType = leastValuableType(sideAttackers);
+            // the king may only recapture if the other side has nothing left to take it back
+            if (pieceType == KING && (attackers & occupancyBySideBB[Side.flipped(side)]) != 0)
+                break;
+
+            // the side may stop instead of capturing, so the result is at least (or at most) the balance now
+            if (side == sideToMove) {
+                lo = Math.max(lo, Math.min(hi, balance));
+                balance += attackerValue;
+            } else {
+                hi = Math.min(hi, Math.max(lo, balance));
+                balance -= attackerValue;
+            }
+
+            attackerValue = SEE_VALUES[pieceType];
+            long attacker = sideAttackers & occupancyByTypeBB[pieceType];
+            occupied ^= attacker & -attacker;
+            attackers = addXrayAttackers(attackers, dest, pieceType, occupied) & occupied;
+            side = Side.flipped(side);
+        }
+        return Math.max(lo, Math.min(hi, balance));
+    }
+
+    /**
+     * Checks whether the static exchange evaluation of a legal move is at least {@code threshold}, without computing
+     * its exact value. Cheaper than {@link #see(int)}: the exchange stops as soon as the answer is known.
+     *
+     * @param move      a legal move in this position
+     * @param threshold the material, in pawn units, the move must at least win
+     * @return true if {@code see(move) >= threshold}
+     */
+    public boolean seeGreaterOrEqual(int move, int threshold) {
+        int moveType = moveType(move);
+        if (moveType == CASTLING)
+            return 0 >= threshold;
+
+        int start = startSquare(move);
+        int dest = destSquare(move);
+        long occupied = occupancyBB ^ squareToBB(start);
+        if (moveType == EN_PASSANT)
+            occupied ^= squareToBB(dest - Direction.forward(sideToMove));
+        int movedValue = moveType == PROMOTION ? SEE_VALUES[promotePT(move)] : SEE_VALUES[Piece.type(getPiece(start))];
+        return seeGreaterOrEqual(dest, sideToMove, seeCapturedValue(move), movedValue, occupied, threshold);
+    }
+
+    /**
+     * Returns the pieces of a side that the other side can win material on: for every attacked piece except the king,
+     * a capture by the least valuable enemy attacker has a positive static exchange evaluation.
+     *
+     * @param side the side whose pieces are examined
+     * @return the bitboard of the hanging pieces of {@code side}
+     */
+    public long hangingPieces(int side) {
+        int enemySide = Side.flipped(side);
+        long candidates = occupancyBySideBB[side] & ~occupancyByTypeBB[KING] & attacksBySide(enemySide, occupancyBB);
+        long hanging = 0;
+        for (; candidates != 0; candidates &= (candidates - 1)) {
+            int square = lsbToSquare(candidates);
+            long enemyAttackers = attackersBB(enemySide, square, occupancyBB);
+            int pieceType = leastValuableType(enemyAttackers);
+            long attacker = enemyAttackers & occupancyByTypeBB[pieceType];
+            // a king can only take an undefended piece
+            if (pieceType == KING && attackersBB(side, square, occupancyBB) != 0)
+                continue;
+            if (seeGreaterOrEqual(square, enemySide, SEE_VALUES[Piece.type(board[square])], SEE_VALUES[pieceType],
+                    occupancyBB ^ (attacker & -attacker), 1))
+                hanging |= squareToBB(square);
+        }
+        return hanging;
+    }
+
+    /**
+     * The swap algorithm of {@link #seeGreaterOrEqual(int, int)} for a capture on {@code square}
+     * by {@code side}, after the first capturing piece has left its square.
+     *
+     * @param square        the square of the exchange
+     * @param side          the side making the first capture
+     * @param capturedValue value of what the first capture wins (including a promotion gain)
+     * @param movedValue    value of the piece standing on the square after the first capture
+     * @param occupied      the occupancy after the first capture left its square
+     * @param threshold     the material the first capture must at least win
+     */
+    private boolean seeGreaterOrEqual(int square, int side, int capturedValue, int movedValue, long occupied,
+                                      int threshold) {
+        // swap: the balance from the point of view of the side that has to beat the threshold, assuming the
+        // piece on the square is captured next
+        int swap = capturedValue - threshold;
+        if (swap < 0)
+            return false;
+        swap = movedValue - swap;
+        if (swap <= 0)
+            return true;
+
+        long attackers = attackersBB(square, occupied);
+        int stm = side;
+        boolean result = true;
+        while (true) {
+            stm = Side.flipped(stm);
+            attackers &= occupied;
+            long stmAttackers = attackers & occupancyBySideBB[stm];
+            if (stmAttackers == 0)
+                break;
+
+            result = !result;
+            int pieceType = leastValuableType(stmAttackers);
+            if (pieceType == KING) {
+                // the king takes only if the other side has no attacker left
+                return (attackers & ~occupancyBySideBB[stm]) != 0 ? !result : result;
+            }
+            swap = SEE_VALUES[pieceType] - swap;
+            if (swap < (result ? 1 : 0))
+                break;
+
+            long attacker = stmAttackers & occupancyByTypeBB[pieceType];
+            occupied ^= attacker & -attacker;
+            attackers = addXrayAttackers(attackers, square, pieceType, occupied);
+        }
+        return result;
+    }
+
+    /**
+     * @return the material the move captures, plus the promotion gain, in pawn units
+     */
+    private int seeCapturedValue(int move) {
+        int moveType = moveType(move);
+        if (moveType == EN_PASSANT)
+            return SEE_VALUES[PAWN];
+        int captured = SEE_VALUES[Piece.type(board[destSquare(move)])];
+        return moveType == PROMOTION ? captured + SEE_VALUES[promotePT(move)] - SEE_VALUES[PAWN] : captured;
+    }
+
+    /**
+     * @return the type of the least valuable piece in {@code pieces}, which must not be empty
+     */
+    private int leastValuableType(long pieces) {
+        for (int pieceType = PAWN; pieceType < KING; ++pieceType) {
+            if ((pieces & occupancyByTypeBB[pieceType]) != 0)
+                return pieceType;
+        }
+        return KING;
+    }
+
+    /**
+     * Adds the sliders that attack {@code square} through the square a piece of type {@code pieceType} just left.
+     * Only pawns, bishops, rooks and queens capture along a line that can hide another attacker.
+     */
+    private long addXrayAttackers(long attackers, int square, int pieceType, long occupied) {
+        if (pieceType == PAWN || pieceType == BISHOP || pieceType == QUEEN)
+            attackers |= bishopAttacks(square, occupied) & occupancyByType(BISHOP, QUEEN);
+        if (pieceType == ROOK || pieceType == QUEEN)
+            attackers |= rookAttacks(square, occupied) & occupancyByType(ROOK, QUEEN);
+        return attackers;
+    }
+
     public long attackersByPiece(int piece, int square) {
         return attackersBB(square, occupancyBB) & occupancyByPiece(piece);
     }
@@ -1251,21 +2144,17 @@ public class Position {
      * - With ≤3 pieces: all remaining cases are dead (K vs K, K+B vs K, K+N vs K).
      */
     public boolean inInsufficientMaterial() {
-        int countPiece = Bitboard.bitCount(occupancyBB);
-
-        // Early exit: anything with > 4 pieces or with a queen/rook/pawn cannot be a dead position.
-        if (countPiece > 4 || occupancyByType(QUEEN, ROOK, PAWN) != 0) {
-            return false;
+        // The dead positions are recognized by their material key; the bishop colors are the only thing it does not tell.
+        long key = state.materialKey;
+        for (long deadKey : deadMaterialKeys) {
+            if (key == deadKey)
+                return true;
         }
-
-        if (countPiece == 4) {
-            // The only 4-piece dead scenario: exactly two bishops left, and they are on the same color complex.
-            // This covers both K+B vs K+B (same-color bishops) and K vs K+BB (both bishops same color).
-            return pieceTypeCount(BISHOP) == 2 && Bitboard.isOnSameColor(occupancyByType(BISHOP));
+        for (long twoBishopsKey : twoBishopsMaterialKeys) {
+            if (key == twoBishopsKey)
+                return Bitboard.isOnSameColor(occupancyByType(BISHOP));
         }
-
-        // countPiece <= 3 → all such scenarios are dead (K vs K, K+B vs K, K+N vs K).
-        return true;
+        return false;
     }
 
 
@@ -1273,8 +2162,8 @@ public class Position {
      * Checks whether the position has occurred three times by verifying the actual
      * positions in the game history (repetition by FEN logic).
      * <p>
-     * This method is slower but guaranteed correct. It replays the move history
-     * backwards (up to 50 moves) and compares the repetition-relevant fields  of the FEN:
+     * This method is slower but guaranteed correct. It walks the state history
+     * backwards (up to 50 moves) and compares the repetition-relevant fields of the positions:
      * - piece placement
      * - side to move
      * - castling rights
@@ -1305,6 +2194,62 @@ public class Position {
         return state.numRepetition >= NUM_REPETITION_TO_DRAW;
     }
 
+    /**
+     * Tests whether the side to move has a move to an earlier position of the game (an upcoming repetition),
+     * or whether a position repeated since the search root. A search can score such a node as a draw
+     * without expanding it.
+     * <p>
+     * Each earlier position with the same side to move that differs from the current one by a single move of
+     * a piece is found with two cuckoo table probes of the key difference, so the test costs a few probes per
+     * two plies of the rule-50 window and makes no move. As in a search, the move is only checked to be
+     * unobstructed, not to be legal.
+     *
+     * @param ply the distance of the current position from the search root. An earlier position at or before
+     *            the root only counts if the move belongs to the side to move and the position itself already
+     *            repeated, so that the game would really be drawn.
+     * @return true if the side to move can repeat a position, or a position repeated after the root
+     */
+    public boolean hasUpcomingRepetition(int ply) {
+        int end = Math.min(state.rule50, state.ply);
+        if (end < 3)
+            return false;
+
+        long originalKey = state.key;
+        PositionState step = state.previous;
+        // `other` is the key difference of the moves of the side not to move, zero when they cancel out
+        long other = originalKey ^ step.key ^ colorKey;
+
+        for (int i = 3; i <= end; i += 2) {
+            step = step.previous;
+            other ^= step.key ^ step.previous.key ^ colorKey;
+            step = step.previous;
+            if (other != 0)
+                continue;
+
+            long moveKey = originalKey ^ step.key;
+            int slot = cuckooH1(moveKey);
+            if (cuckooKeys[slot] != moveKey) {
+                slot = cuckooH2(moveKey);
+                if (cuckooKeys[slot] != moveKey)
+                    continue;
+            }
+
+            int move = cuckooMoves[slot];
+            int s1 = startSquare(move), s2 = destSquare(move);
+            if (((pathBetween(s1, s2) ^ squareToBB(s2)) & occupancyBB) != 0)
+                continue;
+
+            if (ply > i)
+                return true;
+            // Both directions of a move share the slot: the piece on the occupied square must be ours.
+            if (Piece.side(board[board[s1] == NULL_PIECE ? s2 : s1]) != sideToMove)
+                continue;
+            if (step.numRepetition > 0)
+                return true;
+        }
+        return false;
+    }
+
     /**
      * Check if the position is in a state of reaching the 50-move rule for a draw.
      *
@@ -1314,32 +2259,82 @@ public class Position {
         return state.rule50 >= RULE_50_COUNT_TO_DRAW;
     }
 
+    /**
+     * Verifies the repetition counted by the keys: walks back through the state history (up to the last capture or
+     * pawn move) and compares the earlier positions with the same side to move and the same key to the current one
+     * exactly: the piece placement, the castling rights and the en passant square.
+     * <p>
+     * The board of the earlier positions is rebuilt in a local copy of the board by taking back the moves of the
+     * history on it, together with the number of squares on which it differs from the current board, so every
+     * comparison is O(1) and the position itself is never changed.
+     *
+     * @return true if the current position occurred at least three times
+     */
     private boolean inVerifyRepetition() {
-        Map<String, Integer> positionCount = new HashMap<>();
-        positionCount.put(generateRepetitionByFenKey(getFen()), 1);
+        // only reached when the tracker reports a repeated key, so the copy is rare
+        int[] earlierBoard = board.clone();
+        int differentSquares = 0;
+        int occurrences = 1;
 
-        boolean isVerified = false;
         int end = Math.min(state.rule50, state.ply);
-        // collect undone moves so we can restore the exact original state without setFen
-        List<Integer> undoneMoves = new ArrayList<>(end);
-
-        for (int i = 0; i < end && !isVerified; i++) {
-            undoneMoves.add(state.lastMove);
-
-            undoMove();
-            String key = generateRepetitionByFenKey(getFen());
-            int count = positionCount.merge(key, 1, Integer::sum);
-            isVerified = count >= 3;
+        PositionState step = state;
+        for (int i = 1; i <= end && step.previous != null; i++) {
+            differentSquares += takeBack(earlierBoard, step);
+            step = step.previous;
+
+            if ((i & 1) == 0 && step.key == state.key && differentSquares == 0
+                    && step.castlingRights == state.castlingRights && step.enPassant == state.enPassant
+                    && ++occurrences >= NUM_REPETITION_TO_DRAW) {
+                return true;
+            }
         }
+        return false;
+    }
 
-        // Restore full state by replaying the undone moves (in reverse order)
-        // make all the moves that were made back.
-        for (int i = undoneMoves.size() - 1; i >= 0; --i) {
-            makeMove(undoneMoves.get(i)); // uses your internal fast repetition tracking
-        }
+    /**
+     * Takes back the last move of {@code st} on a copy of the board, see {@link #inVerifyRepetition()}.
+     *
+     * @return the change of the number of squares on which the copy differs from the board
+     */
+    private int takeBack(int[] earlierBoard, PositionState st) {
+        int move = st.lastMove;
+        int start = startSquare(move);
+        int dest = destSquare(move);
 
-        return isVerified;
+        return switch (moveType(move)) {
+            case CASTLING -> {
+                int kingDest = castlingDestSquareKing[dest], rookDest = castlingDestSquareRook[dest];
+                int king = earlierBoard[kingDest], rook = earlierBoard[rookDest];
+                // clear both destinations first, in Chess960 they may be the start squares of the other piece
+                yield setEarlierPiece(earlierBoard, kingDest, NULL_PIECE) + setEarlierPiece(earlierBoard, rookDest, NULL_PIECE)
+                        + setEarlierPiece(earlierBoard, start, king) + setEarlierPiece(earlierBoard, dest, rook);
+            }
+            case PROMOTION -> {
+                int pawn = Piece.valueBy(Piece.side(earlierBoard[dest]), PAWN);
+                yield setEarlierPiece(earlierBoard, dest, st.capturedPiece) + setEarlierPiece(earlierBoard, start, pawn);
+            }
+            case EN_PASSANT -> {
+                int pawn = earlierBoard[dest];
+                int captureSq = Square.valueBy(Square.file(dest), Square.rank(start));
+                yield setEarlierPiece(earlierBoard, dest, NULL_PIECE) + setEarlierPiece(earlierBoard, start, pawn)
+                        + setEarlierPiece(earlierBoard, captureSq, st.capturedPiece);
+            }
+            default -> {
+                int piece = earlierBoard[dest];
+                yield setEarlierPiece(earlierBoard, dest, st.capturedPiece) + setEarlierPiece(earlierBoard, start, piece);
+            }
+        };
+    }
 
+    /**
+     * Puts a piece on a square of the board copy.
+     *
+     * @return the change of the number of squares on which the copy differs from the board (-1, 0 or 1)
+     */
+    private int setEarlierPiece(int[] earlierBoard, int square, int piece) {
+        int change = (piece != board[square] ? 1 : 0) - (earlierBoard[square] != board[square] ? 1 : 0);
+        earlierBoard[square] = piece;
+        return change;
     }
 
 
@@ -1363,9 +2358,11 @@ public class Position {
         occupancyByPieceBB[piece] |= sqBB;
         board[square] = piece;
 //        numPieces++;
-        ++piecesCount[piece];
+        state.materialKey ^= materialKeys[piece][piecesCount[piece]++];
         state.key ^= pieceSquareKeys[piece][square];
-
+        if (WIDE_KEYS)
+            state.keyHigh ^= pieceSquareKeysHigh[piece][square];
+        updatePieceKeys(piece, pieceSquareKeys[piece][square]);
     }
 
     /**
@@ -1384,8 +2381,11 @@ public class Position {
         occupancyByPieceBB[piece] ^= sqBB;
         board[square] = NULL_PIECE;
 //        numPieces--;
-        --piecesCount[piece];
+        state.materialKey ^= materialKeys[piece][--piecesCount[piece]];
         state.key ^= pieceSquareKeys[piece][square];
+        if (WIDE_KEYS)
+            state.keyHigh ^= pieceSquareKeysHigh[piece][square];
+        updatePieceKeys(piece, pieceSquareKeys[piece][square]);
     }
 
     /**
@@ -1408,6 +2408,19 @@ public class Position {
         board[start] = NULL_PIECE;
         board[dest] = piece;
         state.key ^= (pieceSquareKeys[piece][start] ^ pieceSquareKeys[piece][dest]);
+        if (WIDE_KEYS)
+            state.keyHigh ^= pieceSquareKeysHigh[piece][start] ^ pieceSquareKeysHigh[piece][dest];
+        updatePieceKeys(piece, pieceSquareKeys[piece][start] ^ pieceSquareKeys[piece][dest]);
+    }
+
+    /**
+     * Adds a change of the placement of a piece to the pawn key or to the non-pawn key of its side.
+     */
+    private void updatePieceKeys(int piece, long keyChange) {
+        if (Piece.type(piece) == PAWN)
+            state.pawnKey ^= keyChange;
+        else
+            state.nonPawnKey[Piece.side(piece)] ^= keyChange;
     }
 
     // =======================
@@ -1421,14 +2434,12 @@ public class Position {
      */
     private void updateRepetition() {
         state.numRepetition = 0;
-        // fast lookup on the table if is 0, the position not accuse before.
-        int value = (repetitionList[(int) (state.key & REPETITION_MASK)]++);
-
-        if (value <= 0) {
+        int end = Math.min(state.rule50, state.ply);
+        // fast filter: if the tracker did not see the key in the window, the position did not occur before.
+        if (!repetitions.push(state.key, end)) {
             return;
         }
 
-        int end = Math.min(state.rule50, state.ply);
         if (end >= 4) {
             PositionState step = state.previous.previous;
             for (int i = 4; i <= end; i += 2) {
@@ -1564,24 +2575,4 @@ public class Position {
         // All criteria passed; the position is legal.
         return true;
     }
-
-
-    // =======================
-    // Utilities
-    // =======================
-
-    /**
-     * Split a FEN string into its individual components.
-     *
-     * @param fen The FEN string to be split.
-     * @return An array containing the individual components of the FEN string.
-     */
-    private static String[] splitFen(String fen) {
-        return fen.trim().replaceAll("\\s+", " ").split(" ");
-    }
-
-    private static String generateRepetitionByFenKey(String fen) {
-        String[] parts = fen.split(" ");
-        return parts[0] + " " + parts[1] + " " + parts[2] + " " + parts[3]; // pieces, side, castling, ep
-    }
 }
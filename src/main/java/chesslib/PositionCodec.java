@@ -0,0 +1,187 @@
+package chesslib;
+
+import chesslib.exceptions.IllegalPositionException;
+import chesslib.move.Move;
+import chesslib.types.Castling;
+import chesslib.types.Piece;
+import chesslib.types.Rank;
+import chesslib.types.Square;
+
+import java.nio.ByteBuffer;
+
+import static chesslib.types.Square.Value.NULL_SQUARE;
+
+/**
+ * Fixed-size binary encoding of a position: 32 bytes (four longs) instead of a 60-90 character FEN,
+ * encoded and decoded without any string work.
+ * <p>
+ * Layout:
+ * <ol>
+ *   <li>long 0: the occupancy bitboard.</li>
+ *   <li>longs 1-2: the piece codes of the occupied squares, 4 bits each, in bitboard order (lowest square first);
+ *   the code is the {@link Piece} value. Up to 16 pieces fit in long 1, the rest go to long 2.</li>
+ *   <li>long 3: bit 0 the side to move; bits 1-16 the castling rights, 4 bits per right in {@link Castling} bit
+ *   order (bit 3 set if the right exists, bits 0-2 the file of its rook, so Chess960 rights survive);
+ *   bits 17-23 the en passant square (64 for none); bits 24-31 the rule50 counter, saturated at 255; bits 32-63
+ *   the full move number.</li>
+ * </ol>
+ * The rule50 counter is the only lossy field: a counter above 255 decodes as 255. Every value from 150 up
+ * means the same to all draw rules (the 50 and 75 move rules), so no rule can tell them apart.
+ * A decoded position has no move history, like a position set from FEN.
+ */
+public final class PositionCodec {
+    /** Number of longs of an encoded position. */
+    public static final int LONGS = 4;
+    /** Number of bytes of an encoded position. */
+    public static final int BYTES = LONGS * Long.BYTES;
+
+    private static final int CASTLING_SHIFT = 1;
+    private static final int CASTLING_BITS = 4;
+    private static final int CASTLING_PRESENT = 0b1000;
+    private static final int EN_PASSANT_SHIFT = 17;
+    private static final int RULE_50_SHIFT = 24;
+    private static final int MOVE_NUMBER_SHIFT = 32;
+    private static final int MAX_RULE_50 = 0xff;
+    private static final int MAX_PIECES = 32;
+
+    private PositionCodec() {
+    }
+
+    /**
+     * Encodes a position into a new array.
+     *
+     * @param position the position to encode
+     * @return the {@link #LONGS} longs of the encoding
+     */
+    public static long[] encode(Position position) {
+        long[] dst = new long[LONGS];
+        encode(position, dst, 0);
+        return dst;
+    }
+
+    /**
+     * Encodes a position into {@code dst[offset] .. dst[offset + 3]}.
+     *
+     * @param position the position to encode
+     * @param dst      the destination array
+     * @param offset   index of the first long to write
+     */
+    public static void encode(Position position, long[] dst, int offset) {
+        long occupancy = position.occupancy();
+        long low = 0, high = 0;
+        int index = 0;
+        for (long bb = occupancy; bb != 0; bb &= (bb - 1), ++index) {
+            long code = position.getPiece(Bitboard.lsbToSquare(bb));
+            if (index < 16)
+                low |= code << (4 * index);
+            else
+                high |= code << (4 * (index - 16));
+        }
+
+        PositionState state = position.getState();
+
+        long meta = position.sideToMove();
+        for (int i = 0; i < CASTLING_BITS; ++i) {
+            int castleRight = 1 << i;
+            if ((state.castlingRights & castleRight) != 0) {
+                int rookSq = Move.destSquare(position.castlingMove(castleRight));
+                meta |= (long) (CASTLING_PRESENT | Square.file(rookSq)) << (CASTLING_SHIFT + CASTLING_BITS * i);
+            }
+        }
+        meta |= (long) state.enPassant << EN_PASSANT_SHIFT;
+        meta |= (long) Math.min(state.rule50, MAX_RULE_50) << RULE_50_SHIFT; // past 150 all draw rules agree
+        meta |= (long) position.getNumMoves() << MOVE_NUMBER_SHIFT; // the full move number
+
+        dst[offset] = occupancy;
+        dst[offset + 1] = low;
+        dst[offset + 2] = high;
+        dst[offset + 3] = meta;
+    }
+
+    /**
+     * Writes the encoding of a position as four longs at the buffer's position, in the buffer's byte order,
+     * and advances the buffer by {@link #BYTES}.
+     */
+    public static void encode(Position position, ByteBuffer dst) {
+        long[] longs = encode(position);
+        for (long value : longs) {
+            dst.putLong(value);
+        }
+    }
+
+    /**
+     * Decodes a position from {@code src[offset] .. src[offset + 3]}.
+     *
+     * @return a new position
+     * @throws IllegalPositionException if the data does not describe a legal position
+     */
+    public static Position decode(long[] src, int offset) throws IllegalPositionException {
+        Position position = new Position();
+        decode(src, offset, position);
+        return position;
+    }
+
+    /**
+     * Decodes four longs read from the buffer's position, in the buffer's byte order, into a new position.
+     *
+     * @throws IllegalPositionException if the data does not describe a legal position
+     */
+    public static Position decode(ByteBuffer src) throws IllegalPositionException {
+        Position position = new Position();
+        decode(src, position);
+        return position;
+    }
+
+    /**
+     * Decodes four longs read from the buffer's position into an existing position, replacing its content.
+     *
+     * @throws IllegalPositionException if the data does not describe a legal position
+     */
+    public static void decode(ByteBuffer src, Position target) throws IllegalPositionException {
+        decode(src.getLong(), src.getLong(), src.getLong(), src.getLong(), target);
+    }
+
+    /**
+     * Decodes {@code src[offset] .. src[offset + 3]} into an existing position, replacing its content.
+     *
+     * @throws IllegalPositionException if the data does not describe a legal position
+     */
+    public static void decode(long[] src, int offset, Position target) throws IllegalPositionException {
+        decode(src[offset], src[offset + 1], src[offset + 2], src[offset + 3], target);
+    }
+
+    private static void decode(long occupancy, long low, long high, long meta, Position target)
+            throws IllegalPositionException {
+        if (Long.bitCount(occupancy) > MAX_PIECES)
+            throw new IllegalPositionException("Too many pieces in the encoding");
+
+        int side = (int) (meta & 1);
+        long moveNumber = meta >>> MOVE_NUMBER_SHIFT;
+        if (moveNumber < 1 || moveNumber > Integer.MAX_VALUE / 2)
+            throw new IllegalPositionException("Invalid move number in the encoding: " + moveNumber);
+        target.resetBoard();
+
+        int index = 0;
+        for (long bb = occupancy; bb != 0; bb &= (bb - 1), ++index) {
+            int piece = (int) ((index < 16 ? low >>> (4 * index) : high >>> (4 * (index - 16))) & 0xf);
+            if (!Piece.isValid(piece))
+                throw new IllegalPositionException("Invalid piece code in the encoding: " + piece);
+            target.addPiece(piece, Bitboard.lsbToSquare(bb));
+        }
+        target.validateBoard();
+
+        for (int i = 0; i < CASTLING_BITS; ++i) {
+            int castling = (int) (meta >>> (CASTLING_SHIFT + CASTLING_BITS * i)) & 0xf;
+            if ((castling & CASTLING_PRESENT) != 0) {
+                int castlingSide = Castling.castlingSide(1 << i);
+                int rookSq = Square.valueBy(castling & 0b111, Rank.flippedIfBlack(castlingSide, Rank.RANK_1));
+                target.addCastlingRight(castlingSide, rookSq);
+            }
+        }
+
+        int enPassant = (int) (meta >>> EN_PASSANT_SHIFT) & 0x7f;
+        if (enPassant > NULL_SQUARE)
+            throw new IllegalPositionException("Invalid en passant square in the encoding: " + enPassant);
+        target.finishSetup(side, (int) moveNumber, enPassant, (int) (meta >>> RULE_50_SHIFT) & MAX_RULE_50);
+    }
+}
@@ -16,20 +16,29 @@ public class PositionState {
 
     public long checkers;           // Bitboard representing squares attacked by opponent's pieces
     public long pinMask;            // Bitboard representing pinned pieces. by defoult is 0.
+    public long enemyAttacks;       // Squares attacked by the side not to move, seen through the king of the side to move
+    public boolean enemyAttacksValid; // enemyAttacks is computed lazily, on the first use in this state
 //
 
     public long key;                // Zobrist key for hashing the position
+    public long keyHigh;            // high half of the 128-bit key, maintained only with Position.WIDE_KEYS
+    public long pawnKey;            // Zobrist key of the pawns of both sides
+    public long materialKey;        // Zobrist key of the piece counts
+    public final long[] nonPawnKey = new long[Side.VALUES_COUNT]; // by side: Zobrist key of the pieces other than pawns
     public int ply;                 // Count of half-moves from the initial position
     public int lastMove = 0;        // Encoded valueBy of the last move made in the position
 
     public PositionState previous;  // Reference to the previous state (for move undo functionality)
 
 
-    // maybe to apply letter
+    // Check info, computed lazily by Position.givesCheck on the first use in this state
 
-    public int enemyKingSquare;
-    public long enemyBlocker; // or blocker for each side...
-    public long[] enemyCheckedSquares;
+    public boolean checkInfoValid;  // whether the three fields below are computed for this state
+    public int enemyKingSquare;     // Square of the king of the side not to move
+    public long enemyBlocker;       // Pieces (of both sides) that alone block one of our sliders from the enemy king
+    public long[] enemyCheckedSquares; // by piece type: squares that give check; created on the first use in this state
+
+    public String fen;              // FEN of the position, cached by Position.getFen on the first use in this state
 }
 
 
@@ -0,0 +1,55 @@
+package chesslib;
+
+/**
+ * Fast filter of the repetition detection of a {@link Position}: remembers the keys of the positions of the game
+ * and tells, when a new position is reached, whether its key may have occurred before.
+ * <p>
+ * The answer only has to be safe in one direction: {@code false} means the key certainly did not occur in the
+ * last {@code window} plies, {@code true} means it may have, and the position then walks its state history to
+ * find the earlier occurrence exactly. The keys are pushed and popped in stack order, following make/undo.
+ */
+public interface RepetitionTracker {
+
+    /**
+     * Records the key of the position just reached.
+     *
+     * @param key    the key of the position
+     * @param window how many plies back a repetition is possible (the plies since the last capture or pawn move,
+     *               bounded by the history of the position)
+     * @return false if the key certainly did not occur in the last {@code window} plies, true if it may have
+     */
+    boolean push(long key, int window);
+
+    /**
+     * Forgets the key pushed last, when its move is undone.
+     *
+     * @param key the key of the position that is left
+     */
+    void pop(long key);
+
+    /**
+     * Forgets all the keys, when the position is set up again.
+     */
+    void clear();
+
+    /**
+     * @return an independent tracker with the same keys
+     */
+    RepetitionTracker copy();
+
+    /**
+     * The default tracker: a ring of the recent keys that grows with the longest rule-50 window of the game
+     * (16 keys to start with), scanned over the current window on every push.
+     */
+    static RepetitionTracker ring() {
+        return new RingRepetitionTracker();
+    }
+
+    /**
+     * A table of 1024 counters indexed by the low bits of the key (4 KB): O(1) per push regardless of the window,
+     * for engines that keep few positions alive and play very long shuffling lines.
+     */
+    static RepetitionTracker table() {
+        return new TableRepetitionTracker();
+    }
+}
@@ -0,0 +1,93 @@
+package chesslib;
+
+import java.util.Arrays;
+
+/**
+ * Ring of the keys of the last plies, see {@link RepetitionTracker#ring()}.
+ * <p>
+ * The ring holds the key of ply {@code i} in {@code keys[i & mask]}. It grows (doubles) only when the rule-50
+ * window gets longer than the ring, so its size follows the window and not the length of the game.
+ * Undoing more moves than the ring holds leaves slots that were overwritten by later plies; {@code valid}
+ * counts the trustworthy slots, and a push whose window reaches past them answers "may repeat" until the ring
+ * is refilled.
+ */
+final class RingRepetitionTracker implements RepetitionTracker {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private long[] keys;
+    private int mask;
+    private int size;   // number of keys pushed and not popped
+    private int valid;  // number of the last pushed keys that are still in the ring
+
+    RingRepetitionTracker() {
+        keys = new long[INITIAL_CAPACITY];
+        mask = INITIAL_CAPACITY - 1;
+    }
+
+    private RingRepetitionTracker(RingRepetitionTracker other) {
+        keys = other.keys.clone();
+        mask = other.mask;
+        size = other.size;
+        valid = other.valid;
+    }
+
+    @Override
+    public boolean push(long key, int window) {
+        if (window >= keys.length) {
+            grow();
+        }
+        keys[size & mask] = key;
+        ++size;
+        if (valid < keys.length) {
+            ++valid;
+        }
+
+        // a position can only repeat one with the same side to move, at least 4 plies back
+        int reach = Math.min(window, valid - 1);
+        for (int i = 4; i <= reach; i += 2) {
+            if (keys[(size - 1 - i) & mask] == key) {
+                return true;
+            }
+        }
+        return window > reach; // the earlier keys are unknown
+    }
+
+    /**
+     * Doubles the ring, keeping the valid keys at the slots of their plies.
+     */
+    private void grow() {
+        long[] grown = new long[keys.length * 2];
+        int newMask = grown.length - 1;
+        for (int i = 1; i <= valid; i++) {
+            grown[(size - i) & newMask] = keys[(size - i) & mask];
+        }
+        keys = grown;
+        mask = newMask;
+    }
+
+    @Override
+    public void pop(long key) {
+        assert size > 0 && keys[(size - 1) & mask] == key || valid == 0;
+        --size;
+        if (valid > 0) {
+            --valid;
+        }
+    }
+
+    @Override
+    public void clear() {
+        size = 0;
+        valid = 0;
+        if (keys.length != INITIAL_CAPACITY) {
+            keys = new long[INITIAL_CAPACITY];
+            mask = INITIAL_CAPACITY - 1;
+        } else {
+            Arrays.fill(keys, 0);
+        }
+    }
+
+    @Override
+    public RepetitionTracker copy() {
+        return new RingRepetitionTracker(this);
+    }
+}
@@ -7,7 +7,7 @@ import java.util.Random;
  */
 public class SharedRandom {
     // Fixed seed for consistency.
-    private static final long SEED = 999;//35672, 13,92538709
+    static final long SEED = 999;//35672, 13,92538709
 
     // Shared random number generator instance.
     public static final java.util.Random RANDOM = new Random(SEED);
@@ -0,0 +1,42 @@
+package chesslib;
+
+import java.util.Arrays;
+
+/**
+ * Counters of the pushed keys by their low bits, see {@link RepetitionTracker#table()}.
+ * The counters are ints, so unlike a byte table they never wrap in a long game.
+ */
+final class TableRepetitionTracker implements RepetitionTracker {
+    private static final int SIZE = 1 << 10;
+    private static final int MASK = SIZE - 1;
+
+    private final int[] counts;
+
+    TableRepetitionTracker() {
+        counts = new int[SIZE];
+    }
+
+    private TableRepetitionTracker(TableRepetitionTracker other) {
+        counts = other.counts.clone();
+    }
+
+    @Override
+    public boolean push(long key, int window) {
+        return counts[(int) (key & MASK)]++ > 0;
+    }
+
+    @Override
+    public void pop(long key) {
+        --counts[(int) (key & MASK)];
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(counts, 0);
+    }
+
+    @Override
+    public RepetitionTracker copy() {
+        return new TableRepetitionTracker(this);
+    }
+}
@@ -0,0 +1,175 @@
+package chesslib.batch;
+
+import chesslib.Bitboard;
+import chesslib.Position;
+import chesslib.types.Piece;
+import chesslib.types.Side;
+import org.jetbrains.annotations.NotNull;
+
+import static chesslib.types.PieceType.Value.*;
+import static chesslib.types.Side.Value.*;
+
+/**
+ * A batch of positions in struct-of-arrays layout: lane {@code i} of every bitboard array belongs to position
+ * {@code i}. Attack sets and check flags are computed for the whole batch at once with set-wise (Kogge-Stone)
+ * fills instead of per-square table lookups, several lanes per instruction with the Vector API. Mobility is
+ * counted per piece with the attack tables.
+ * <p>
+ * The vector kernels need {@code --add-modules jdk.incubator.vector} at run time. Without the module, or with
+ * {@code -Dchesslib.batchVector=false}, the same results come from the scalar kernels, which are built on the
+ * set-wise {@link Bitboard} attacks and fills and are the reference of the vector ones.
+ * <p>
+ * A batch holds the piece placement and the side to move only, no castling or en passant rights.
+ */
+public final class PositionBatch {
+    // Whether the vector kernels are used; decided once, the JIT removes the other branch.
+    static final boolean VECTOR = !"false".equals(System.getProperty("chesslib.batchVector"))
+            && ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+
+    final int capacity;
+    int size;
+
+    // The lanes of each piece, indexed by piece value (Piece.valueBy(side, pieceType)); null for unused values.
+    final long[][] pieces = new long[Piece.VALUES_COUNT][];
+    final long[][] bySide = new long[Side.VALUES_COUNT][];
+    final long[] occupancy;
+    // WHITE or BLACK per lane, as longs so the vector kernels load them like the bitboards.
+    final long[] sideToMove;
+
+    /**
+     * Creates an empty batch.
+     *
+     * @param capacity the maximum number of positions
+     */
+    public PositionBatch(int capacity) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("Batch capacity must be at least 1: " + capacity);
+        this.capacity = capacity;
+        for (int piece : Piece.intValues()) {
+            pieces[piece] = new long[capacity];
+        }
+        bySide[WHITE] = new long[capacity];
+        bySide[BLACK] = new long[capacity];
+        occupancy = new long[capacity];
+        sideToMove = new long[capacity];
+    }
+
+    /**
+     * @return whether this JVM computes batches with the Vector API rather than the scalar kernels
+     */
+    public static boolean isVectorized() {
+        return VECTOR;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Copies the piece placement and the side to move of a position into the next lane.
+     *
+     * @return the lane of the position
+     * @throws IllegalStateException if the batch is full
+     */
+    public int add(@NotNull Position position) {
+        if (size == capacity)
+            throw new IllegalStateException("Batch is full: " + capacity);
+        copy(size, position);
+        return size++;
+    }
+
+    /**
+     * Replaces the position of a lane below {@link #size()}.
+     */
+    public void set(int lane, @NotNull Position position) {
+        if (lane < 0 || lane >= size)
+            throw new IndexOutOfBoundsException("Lane " + lane + " of a batch of " + size);
+        copy(lane, position);
+    }
+
+    private void copy(int lane, Position position) {
+        for (int piece : Piece.intValues()) {
+            pieces[piece][lane] = position.occupancyByPiece(piece);
+        }
+        bySide[WHITE][lane] = position.occupancyBySide(WHITE);
+        bySide[BLACK][lane] = position.occupancyBySide(BLACK);
+        occupancy[lane] = position.occupancy();
+        sideToMove[lane] = position.sideToMove();
+    }
+
+    /**
+     * @return the bitboard of one piece of one lane
+     */
+    public long occupancyBySideAndType(int lane, int side, int pieceType) {
+        return lanes(side, pieceType)[lane];
+    }
+
+    // The lanes of one piece.
+    long[] lanes(int side, int pieceType) {
+        return pieces[Piece.valueBy(side, pieceType)];
+    }
+
+    /**
+     * Computes the squares attacked by one side in every lane, like {@link Position#attacksBySide}.
+     *
+     * @param dst receives the attacks of lane {@code i} at index {@code i}
+     */
+    public void attacks(int side, long[] dst) {
+        int lane = VECTOR ? VectorBatchKernels.attacks(this, side, dst) : 0;
+        for (; lane < size; ++lane) {
+            dst[lane] = ScalarBatchKernels.attacks(this, side, lane);
+        }
+    }
+
+    /**
+     * Computes the squares attacked by the bishops, rooks and queens of one side in every lane.
+     */
+    public void sliderAttacks(int side, long[] dst) {
+        int lane = VECTOR ? VectorBatchKernels.sliderAttacks(this, side, dst) : 0;
+        for (; lane < size; ++lane) {
+            dst[lane] = ScalarBatchKernels.sliderAttacks(this, side, lane);
+        }
+    }
+
+    /**
+     * Computes the squares attacked by the pawns of one side in every lane.
+     */
+    public void pawnAttacks(int side, long[] dst) {
+        int lane = VECTOR ? VectorBatchKernels.pawnAttacks(this, side, dst) : 0;
+        for (; lane < size; ++lane) {
+            dst[lane] = Bitboard.pawnAttacksBB(side, lanes(side, PAWN)[lane]);
+        }
+    }
+
+    /**
+     * Computes for every lane whether the side to move is in check.
+     */
+    public void inCheck(boolean[] dst) {
+        int lane = VECTOR ? VectorBatchKernels.inCheck(this, dst) : 0;
+        for (; lane < size; ++lane) {
+            dst[lane] = ScalarBatchKernels.checkers(this, lane) != 0;
+        }
+    }
+
+    /**
+     * Computes the mobility of one side in every lane: the number of pseudo-legal moves of its knights, bishops,
+     * rooks, queens and king, that is, the squares each of these pieces attacks that the side does not occupy,
+     * summed per piece. Pawn moves and castling are not counted, and neither pins nor checks are considered.
+     * <p>
+     * Always computed by the scalar kernel: the per-piece count needs one attack set per piece, and the attack
+     * tables give those several times faster than one set-wise fill per piece in every lane.
+     */
+    public void mobility(int side, int[] dst) {
+        for (int lane = 0; lane < size; ++lane) {
+            dst[lane] = ScalarBatchKernels.mobility(this, side, lane);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package chesslib.batch;
+
+import static chesslib.Bitboard.*;
+import static chesslib.types.PieceType.Value.*;
+
+/**
+ * The scalar batch kernels, one lane at a time: the fallback when the Vector API is not available and the
+ * reference of {@link VectorBatchKernels}. They use the set-wise attacks and fills of {@link chesslib.Bitboard},
+ * so every piece of a type is handled at once; only {@link #mobility} goes piece by piece.
+ */
+final class ScalarBatchKernels {
+    private ScalarBatchKernels() {
+    }
+
+    static long attacks(PositionBatch batch, int side, int lane) {
+        return pawnAttacksBB(side, batch.lanes(side, PAWN)[lane])
+                | knightAttacksBB(batch.lanes(side, KNIGHT)[lane])
+                | sliderAttacks(batch, side, lane)
+                | kingAttacksBB(batch.lanes(side, KING)[lane]);
+    }
+
+    static long sliderAttacks(PositionBatch batch, int side, int lane) {
+        long occupancy = batch.occupancy[lane];
+        long queens = batch.lanes(side, QUEEN)[lane];
+        return bishopAttacksBB(batch.lanes(side, BISHOP)[lane] | queens, occupancy)
+                | rookAttacksBB(batch.lanes(side, ROOK)[lane] | queens, occupancy);
+    }
+
+    /**
+     * @return the pieces giving check to the side to move of a lane
+     */
+    static long checkers(PositionBatch batch, int lane) {
+        int us = (int) batch.sideToMove[lane], them = us ^ 1;
+        long king = batch.lanes(us, KING)[lane];
+        long occupancy = batch.occupancy[lane];
+        long queens = batch.lanes(them, QUEEN)[lane];
+        // the attacks of a super piece on the king square, as seen from the king
+        return (pawnAttacksBB(us, king) & batch.lanes(them, PAWN)[lane])
+                | (knightAttacksBB(king) & batch.lanes(them, KNIGHT)[lane])
+                | (bishopAttacksBB(king, occupancy) & (batch.lanes(them, BISHOP)[lane] | queens))
+                | (rookAttacksBB(king, occupancy) & (batch.lanes(them, ROOK)[lane] | queens));
+    }
+
+    /**
+     * The pseudo-legal moves of the knights, bishops, rooks, queens and king, counted per piece with the attack
+     * tables, so two pieces reaching the same square count twice.
+     */
+    static int mobility(PositionBatch batch, int side, int lane) {
+        long notOwn = ~batch.bySide[side][lane];
+        long occupancy = batch.occupancy[lane];
+        int count = bitCount(kingAttacksBB(batch.lanes(side, KING)[lane]) & notOwn);
+        for (long knights = batch.lanes(side, KNIGHT)[lane]; knights != 0; knights &= (knights - 1)) {
+            count += bitCount(knightAttacks(lsbToSquare(knights)) & notOwn);
+        }
+        for (long bishops = batch.lanes(side, BISHOP)[lane]; bishops != 0; bishops &= (bishops - 1)) {
+            count += bitCount(bishopAttacks(lsbToSquare(bishops), occupancy) & notOwn);
+        }
+        for (long rooks = batch.lanes(side, ROOK)[lane]; rooks != 0; rooks &= (rooks - 1)) {
+            count += bitCount(rookAttacks(lsbToSquare(rooks), occupancy) & notOwn);
+        }
+        for (long queens = batch.lanes(side, QUEEN)[lane]; queens != 0; queens &= (queens - 1)) {
+            count += bitCount(queenAttacks(lsbToSquare(queens), occupancy) & notOwn);
+        }
+        return count;
+    }
+}
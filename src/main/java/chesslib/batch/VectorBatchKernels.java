@@ -0,0 +1,157 @@
+package chesslib.batch;
+
+import chesslib.Bitboard;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorSpecies;
+
+import static chesslib.Bitboard.FILE_A_BB;
+import static chesslib.Bitboard.FILE_B_BB;
+import static chesslib.Bitboard.FILE_G_BB;
+import static chesslib.Bitboard.FILE_H_BB;
+import static chesslib.types.Direction.*;
+import static chesslib.types.PieceType.Value.*;
+import static chesslib.types.Side.Value.*;
+import static jdk.incubator.vector.VectorOperators.LSHL;
+import static jdk.incubator.vector.VectorOperators.LSHR;
+import static jdk.incubator.vector.VectorOperators.NE;
+
+/**
+ * The batch kernels on the Vector API: the same set-wise attacks as {@link ScalarBatchKernels}, on
+ * {@link LongVector#SPECIES_PREFERRED} lanes at a time (4 with AVX2, 8 with AVX-512). Every kernel handles the
+ * lanes up to the last full vector and returns their count; the caller finishes the tail with the scalar kernels.
+ * <p>
+ * Only loaded when {@link PositionBatch#VECTOR} is set, so the library runs without the incubator module.
+ * It uses no operation newer than the JDK 17 incubator API.
+ */
+final class VectorBatchKernels {
+    private static final VectorSpecies<Long> SPECIES = LongVector.SPECIES_PREFERRED;
+
+    private static final long NOT_A = ~FILE_A_BB;
+    private static final long NOT_H = ~FILE_H_BB;
+    private static final long NOT_AB = ~(FILE_A_BB | FILE_B_BB);
+    private static final long NOT_GH = ~(FILE_G_BB | FILE_H_BB);
+
+    private VectorBatchKernels() {
+    }
+
+    static int attacks(PositionBatch batch, int side, long[] dst) {
+        int bound = SPECIES.loopBound(batch.size);
+        for (int lane = 0; lane < bound; lane += SPECIES.length()) {
+            LongVector empty = load(batch.occupancy, lane).not();
+            LongVector queens = load(batch.lanes(side, QUEEN), lane);
+            pawnAttacks(side, load(batch.lanes(side, PAWN), lane))
+                    .or(knightAttacks(load(batch.lanes(side, KNIGHT), lane)))
+                    .or(bishopAttacks(load(batch.lanes(side, BISHOP), lane).or(queens), empty))
+                    .or(rookAttacks(load(batch.lanes(side, ROOK), lane).or(queens), empty))
+                    .or(kingAttacks(load(batch.lanes(side, KING), lane)))
+                    .intoArray(dst, lane);
+        }
+        return bound;
+    }
+
+    static int sliderAttacks(PositionBatch batch, int side, long[] dst) {
+        int bound = SPECIES.loopBound(batch.size);
+        for (int lane = 0; lane < bound; lane += SPECIES.length()) {
+            LongVector empty = load(batch.occupancy, lane).not();
+            LongVector queens = load(batch.lanes(side, QUEEN), lane);
+            bishopAttacks(load(batch.lanes(side, BISHOP), lane).or(queens), empty)
+                    .or(rookAttacks(load(batch.lanes(side, ROOK), lane).or(queens), empty))
+                    .intoArray(dst, lane);
+        }
+        return bound;
+    }
+
+    static int pawnAttacks(PositionBatch batch, int side, long[] dst) {
+        int bound = SPECIES.loopBound(batch.size);
+        for (int lane = 0; lane < bound; lane += SPECIES.length()) {
+            pawnAttacks(side, load(batch.lanes(side, PAWN), lane)).intoArray(dst, lane);
+        }
+        return bound;
+    }
+
+    /**
+     * Like {@link ScalarBatchKernels#checkers}; since the side to move differs between lanes, the pieces of
+     * "us" and "them" are selected per lane with a mask that is all ones where black is to move.
+     */
+    static int inCheck(PositionBatch batch, boolean[] dst) {
+        int bound = SPECIES.loopBound(batch.size);
+        for (int lane = 0; lane < bound; lane += SPECIES.length()) {
+            LongVector black = load(batch.sideToMove, lane).neg();
+            LongVector white = black.not();
+            LongVector empty = load(batch.occupancy, lane).not();
+
+            LongVector king = select(batch.lanes(WHITE, KING), batch.lanes(BLACK, KING), lane, white, black);
+            LongVector pawns = select(batch.lanes(BLACK, PAWN), batch.lanes(WHITE, PAWN), lane, white, black);
+            LongVector knights = select(batch.lanes(BLACK, KNIGHT), batch.lanes(WHITE, KNIGHT), lane, white, black);
+            LongVector queens = select(batch.lanes(BLACK, QUEEN), batch.lanes(WHITE, QUEEN), lane, white, black);
+            LongVector bishops = select(batch.lanes(BLACK, BISHOP), batch.lanes(WHITE, BISHOP), lane, white, black);
+            LongVector rooks = select(batch.lanes(BLACK, ROOK), batch.lanes(WHITE, ROOK), lane, white, black);
+
+            LongVector pawnChecks = pawnAttacks(WHITE, king).and(white).or(pawnAttacks(BLACK, king).and(black));
+            VectorMask<Long> check = pawnChecks.and(pawns)
+                    .or(knightAttacks(king).and(knights))
+                    .or(bishopAttacks(king, empty).and(bishops.or(queens)))
+                    .or(rookAttacks(king, empty).and(rooks.or(queens)))
+                    .compare(NE, 0);
+            check.intoArray(dst, lane);
+        }
+        return bound;
+    }
+
+    // ====    set-wise attacks, lane-wise
+
+    private static LongVector load(long[] lanes, int lane) {
+        return LongVector.fromArray(SPECIES, lanes, lane);
+    }
+
+    // The lanes of `whenWhite` where white is to move and of `whenBlack` where black is.
+    private static LongVector select(long[] whenWhite, long[] whenBlack, int lane, LongVector white, LongVector black) {
+        return load(whenWhite, lane).and(white).or(load(whenBlack, lane).and(black));
+    }
+
+    private static LongVector pawnAttacks(int side, LongVector pawns) {
+        return side == WHITE
+                ? pawns.lanewise(LSHL, UP_LEFT).and(NOT_H).or(pawns.lanewise(LSHL, UP_RIGHT).and(NOT_A))
+                : pawns.lanewise(LSHR, -DOWN_LEFT).and(NOT_H).or(pawns.lanewise(LSHR, -DOWN_RIGHT).and(NOT_A));
+    }
+
+    private static LongVector knightAttacks(LongVector knights) {
+        LongVector oneFile = knights.lanewise(LSHR, 1).and(NOT_H).or(knights.lanewise(LSHL, 1).and(NOT_A));
+        LongVector twoFiles = knights.lanewise(LSHR, 2).and(NOT_GH).or(knights.lanewise(LSHL, 2).and(NOT_AB));
+        return oneFile.lanewise(LSHL, 16).or(oneFile.lanewise(LSHR, 16))
+                .or(twoFiles.lanewise(LSHL, 8)).or(twoFiles.lanewise(LSHR, 8));
+    }
+
+    private static LongVector kingAttacks(LongVector kings) {
+        LongVector row = kings.lanewise(LSHR, 1).and(NOT_H).or(kings.lanewise(LSHL, 1).and(NOT_A));
+        LongVector withKings = row.or(kings);
+        return row.or(withKings.lanewise(LSHL, 8)).or(withKings.lanewise(LSHR, 8));
+    }
+
+    private static LongVector bishopAttacks(LongVector bishops, LongVector empty) {
+        return slide(bishops, empty, UP_LEFT).or(slide(bishops, empty, UP_RIGHT))
+                .or(slide(bishops, empty, DOWN_LEFT)).or(slide(bishops, empty, DOWN_RIGHT));
+    }
+
+    private static LongVector rookAttacks(LongVector rooks, LongVector empty) {
+        return slide(rooks, empty, UP).or(slide(rooks, empty, DOWN))
+                .or(slide(rooks, empty, LEFT)).or(slide(rooks, empty, RIGHT));
+    }
+
+    // Bitboard.slidingAttacks (the Kogge-Stone fill of Bitboard.occludedFill, shifted once more), lane-wise.
+    private static LongVector slide(LongVector sliders, LongVector empty, int direction) {
+        long wrap = Bitboard.wrapMask(direction);
+        LongVector propagate = empty.and(wrap);
+        sliders = sliders.or(propagate.and(shift(sliders, direction)));
+        propagate = propagate.and(shift(propagate, direction));
+        sliders = sliders.or(propagate.and(shift(sliders, 2 * direction)));
+        propagate = propagate.and(shift(propagate, 2 * direction));
+        sliders = sliders.or(propagate.and(shift(sliders, 4 * direction)));
+        return shift(sliders, direction).and(wrap);
+    }
+
+    private static LongVector shift(LongVector bb, int direction) {
+        return direction > 0 ? bb.lanewise(LSHL, direction) : bb.lanewise(LSHR, -direction);
+    }
+}
@@ -7,7 +7,11 @@ import chesslib.types.*;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.Iterator;
-import java.util.function.Function;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import static chesslib.Bitboard.*;
 import static chesslib.move.Move.*;
 import static chesslib.types.Castling.*;
@@ -35,29 +39,29 @@ import static chesslib.types.Square.Value.NULL_SQUARE;
 
  */
 public class MoveGenerator {
-    // short-circuiting move list
-    private static final MoveListInterface SHORT_CIRCUIT_LIST = new ShortCircuitList();
-    private static final EarlyExit EARLY_EXIT = new EarlyExit();
-
+    // Generation stages, combined as flags by generate().
+    static final int CAPTURES = 1;           // captures, en passant and all promotions (including quiet under-promotions)
+    static final int QUIETS = 2;             // every other move: non-capturing moves, pawn pushes and castling
+    static final int ALL = CAPTURES | QUIETS;
+    static final int NO_CASTLING = 4;        // modifier of QUIETS: leave out castling
+    static final int QUIET_CHECKS = QUIETS | NO_CASTLING; // the quiets the quiet checks stage filters for checks
 
     /**
-     * Exception used to short-circuit move generation when a legal move is found.
-     * Skips expensive stack trace generation for performance.
+     * Move list adapter that keeps only the moves giving check, used for the quiet checks stage.
      */
-    private static class EarlyExit extends RuntimeException {
-        private EarlyExit() {
-            super(null, null, false, false); // disables suppression and stack trace
+    private static class QuietCheckFilter implements MoveListInterface {
+        private final Position pos;
+        private final MoveListInterface target;
+
+        QuietCheckFilter(Position pos, MoveListInterface target) {
+            this.pos = pos;
+            this.target = target;
         }
-    }
 
-    /**
-     * Special MoveListInterface that throws on the first added move.
-     * Used to detect existence of at least one legal move.
-     */
-    private static class ShortCircuitList implements MoveListInterface {
         @Override
         public void add(int move) {
-            throw EARLY_EXIT;
+            if (pos.givesCheck(move))
+                target.add(move);
         }
 
         @Override
@@ -67,24 +71,207 @@ public class MoveGenerator {
 
         @Override
         public int size() {
-            return 0;
+            return target.size();
         }
     }
 
     /**
-     * Efficiently checks whether the given position has any legal move.
-     * Uses early-exit logic by attempting to generate moves and stopping at the first valid one.
+     * Efficiently checks whether the given position has any legal move, without generating any move.
+     * The piece groups are tried in order of their usual mobility (sliders, knights, pawns, king), and the check
+     * returns as soon as one group has a legal destination.
      *
      * @param pos the position to check
      * @return true if any legal move exists, false if none (checkmate or stalemate)
      */
     public static boolean hasAnyLegalMove(@NotNull Position pos) {
-        try {
-            createAll(pos, SHORT_CIRCUIT_LIST);
-            return false; // no legal move was added
-        } catch (EarlyExit e) {
-            return true; // early exit triggered — legal move exists
+        int side = pos.sideToMove();
+        int enemySide = Side.flipped(side);
+        PositionState state = pos.getState();
+        int kSq = state.kingSquare;
+        long occupancy = pos.occupancy();
+        long enemy = pos.occupancyBySide(enemySide);
+        long empty = ~occupancy;
+        long checker = state.checkers;
+
+        if (!has2OrMoreBits(checker)) {
+            long pinMask = state.pinMask;
+            long pinMaskDiagonals = pinMask & bishopAttacks(kSq);
+            long pinMaskRankFile = pinMask & rookAttacks(kSq);
+            long checkMask = checker == 0 ? FULL_BB : pathBetween(kSq, lsbToSquare(checker));
+            long target = checkMask & (enemy | empty);
+
+            // Sliders. Queens are in both groups.
+            for (long rookQueen = pos.occupancyBySideAndType(side, ROOK, QUEEN) & ~pinMaskDiagonals;
+                 rookQueen != 0; rookQueen &= (rookQueen - 1)) {
+                int start = lsbToSquare(rookQueen);
+                long pin = (pinMaskRankFile & squareToBB(start)) != 0 ? pinMaskRankFile : FULL_BB;
+                if ((rookAttacks(start, occupancy) & target & pin) != 0)
+                    return true;
+            }
+            for (long bishopQueen = pos.occupancyBySideAndType(side, BISHOP, QUEEN) & ~pinMaskRankFile;
+                 bishopQueen != 0; bishopQueen &= (bishopQueen - 1)) {
+                int start = lsbToSquare(bishopQueen);
+                long pin = (pinMaskDiagonals & squareToBB(start)) != 0 ? pinMaskDiagonals : FULL_BB;
+                if ((bishopAttacks(start, occupancy) & target & pin) != 0)
+                    return true;
+            }
+
+            // Knights
+            for (long knights = pos.occupancyBySideAndType(side, KNIGHT) & ~pinMask;
+                 knights != 0; knights &= (knights - 1)) {
+                if ((knightAttacks(lsbToSquare(knights)) & target) != 0)
+                    return true;
+            }
+
+            // Pawns
+            if (countPawnMoves(pos, side, enemySide, kSq, enemy, empty, pinMaskDiagonals, pinMaskRankFile,
+                    checkMask, true) != 0)
+                return true;
         }
+
+        // King
+        if ((attacks(KING, kSq) & (enemy | empty) & ~pos.enemyAttacks()) != 0)
+            return true;
+
+        // Castling. Usually the king can already step onto its path, but not always in chess960.
+        int allCastling = allCastling(side) & state.castlingRights;
+        if (allCastling != 0 && checker == 0) {
+            if ((allCastling & Castling.ALL_SHORT) != 0
+                    && pos.isLegalCastlingMove(pos.castlingMove(allCastling & Castling.ALL_SHORT)))
+                return true;
+            if ((allCastling & Castling.ALL_LONG) != 0
+                    && pos.isLegalCastlingMove(pos.castlingMove(allCastling & Castling.ALL_LONG)))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Counts the legal moves of the position without generating them: every piece group adds the population count
+     * of its legal destinations (four moves per promotion). King moves are masked with the enemy attack map of the
+     * position; only castling and en passant are checked move by move.
+     *
+     * @param pos The current chess position.
+     * @return The number of legal moves, the same as the size of {@link #createAll}'s list.
+     */
+    public static int countLegalMoves(@NotNull Position pos) {
+        int side = pos.sideToMove();
+        int enemySide = Side.flipped(side);
+        PositionState state = pos.getState();
+        int kSq = state.kingSquare;
+        long occupancy = pos.occupancy();
+        long enemy = pos.occupancyBySide(enemySide);
+        long empty = ~occupancy;
+        long checker = state.checkers;
+        int count = 0;
+
+        // King moves
+        count += Long.bitCount(attacks(KING, kSq) & (enemy | empty) & ~pos.enemyAttacks());
+
+        // In double check, only king can move
+        if (has2OrMoreBits(checker))
+            return count;
+
+        // Castling
+        int allCastling = allCastling(side) & state.castlingRights;
+        if (allCastling != 0 && checker == 0) {
+            if ((allCastling & Castling.ALL_SHORT) != 0
+                    && pos.isLegalCastlingMove(pos.castlingMove(allCastling & Castling.ALL_SHORT)))
+                ++count;
+            if ((allCastling & Castling.ALL_LONG) != 0
+                    && pos.isLegalCastlingMove(pos.castlingMove(allCastling & Castling.ALL_LONG)))
+                ++count;
+        }
+
+        long pinMask = state.pinMask;
+        long pinMaskDiagonals = pinMask & bishopAttacks(kSq);
+        long pinMaskRankFile = pinMask & rookAttacks(kSq);
+        long checkMask = checker == 0 ? FULL_BB : pathBetween(kSq, lsbToSquare(checker));
+
+        // Pawn moves
+        count += countPawnMoves(pos, side, enemySide, kSq, enemy, empty, pinMaskDiagonals, pinMaskRankFile,
+                checkMask, false);
+
+        long target = checkMask & (enemy | empty);
+
+        // Knights
+        for (long knights = pos.occupancyBySideAndType(side, KNIGHT) & ~pinMask;
+             knights != 0; knights &= (knights - 1)) {
+            count += Long.bitCount(knightAttacks(lsbToSquare(knights)) & target);
+        }
+
+        // Rooks and queen, pinned ones only move along the pin
+        long rookQueen = pos.occupancyBySideAndType(side, ROOK, QUEEN);
+        for (long pieces = rookQueen & pinMaskRankFile; pieces != 0; pieces &= (pieces - 1)) {
+            count += Long.bitCount(rookAttacks(lsbToSquare(pieces), occupancy) & target & pinMaskRankFile);
+        }
+        for (long pieces = rookQueen & ~pinMask; pieces != 0; pieces &= (pieces - 1)) {
+            count += Long.bitCount(rookAttacks(lsbToSquare(pieces), occupancy) & target);
+        }
+
+        // Bishop and queen
+        long bishopsQueen = pos.occupancyBySideAndType(side, BISHOP, QUEEN);
+        for (long pieces = bishopsQueen & pinMaskDiagonals; pieces != 0; pieces &= (pieces - 1)) {
+            count += Long.bitCount(bishopAttacks(lsbToSquare(pieces), occupancy) & target & pinMaskDiagonals);
+        }
+        for (long pieces = bishopsQueen & ~pinMask; pieces != 0; pieces &= (pieces - 1)) {
+            count += Long.bitCount(bishopAttacks(lsbToSquare(pieces), occupancy) & target);
+        }
+
+        return count;
+    }
+
+    /**
+     * Counts the legal pawn moves with the same masks as {@link #createWhitePawnsMove} and {@link #createBlackPawnsMove}.
+     *
+     * @param existsOnly if true, returns a positive number as soon as one legal pawn move is known
+     * @return the number of legal pawn moves (promotions count four times), or any positive number if
+     * {@code existsOnly} and there is a legal pawn move
+     */
+    private static int countPawnMoves(@NotNull Position pos, int side, int enemySide, int kSq, long enemy, long empty,
+                                      long pinMaskDiagonals, long pinMaskRankFile, long checkMask, boolean existsOnly) {
+        long pawns = pos.occupancyBySideAndType(side, PAWN);
+        long pinOnLeftD = pinMaskDiagonals & Bitboard.leftDiagonal(kSq);
+        long pinOnRightD = pinMaskDiagonals & Bitboard.rightDiagonal(kSq);
+
+        long lrPawns = pawns & ~pinMaskRankFile;
+        long pPawns = pawns & ~pinMaskDiagonals & ~(pinMaskRankFile & rankBB(Square.rank(kSq)));
+
+        long leftPawns, rightPawns, pushP, push2P, rankToPromote;
+        if (side == WHITE) {
+            rankToPromote = RANK_7_BB;
+            leftPawns = lrPawns & ~pinOnRightD & shiftDownRight(checkMask & enemy);
+            rightPawns = lrPawns & ~pinOnLeftD & shiftDownLeft(checkMask & enemy);
+            pushP = pPawns & shiftDown(empty);
+            push2P = pushP & RANK_2_BB & Bitboard.shiftDownTwice(empty & checkMask);
+            pushP &= shiftDown(checkMask);
+        } else {
+            rankToPromote = RANK_2_BB;
+            leftPawns = lrPawns & ~pinOnRightD & shiftUpLeft(checkMask & enemy);
+            rightPawns = lrPawns & ~pinOnLeftD & shiftUpRight(checkMask & enemy);
+            pushP = pPawns & shiftUp(empty);
+            push2P = pushP & RANK_7_BB & Bitboard.shiftUpTwice(empty & checkMask);
+            pushP &= shiftUp(checkMask);
+        }
+
+        int count = Long.bitCount(leftPawns) + Long.bitCount(rightPawns) + Long.bitCount(pushP) + Long.bitCount(push2P);
+        if (count != 0 && existsOnly)
+            return count;
+        // every promoting pawn was counted once, add the three other promotion pieces
+        count += 3 * (Long.bitCount(leftPawns & rankToPromote) + Long.bitCount(rightPawns & rankToPromote)
+                + Long.bitCount(pushP & rankToPromote));
+
+        int enPassantSq = pos.enPassant();
+        if (enPassantSq != NULL_SQUARE) {
+            for (long epPawns = lrPawns & pawnAttacks(enemySide, enPassantSq); epPawns != 0; epPawns &= (epPawns - 1)) {
+                if (pos.isLegalEnPassantMove(Move.create(lsbToSquare(epPawns), enPassantSq, EN_PASSANT))) {
+                    ++count;
+                    if (existsOnly)
+                        return count;
+                }
+            }
+        }
+        return count;
     }
 
     /**
@@ -92,24 +279,79 @@ public class MoveGenerator {
      *
      * @param pos      The current chess position.
      * @param moveList The list to store the generated moves.
-     * @return The move list containing all legal moves.
      */
     public static void createAll(@NotNull Position pos, @NotNull MoveListInterface moveList) {
+        generate(pos, moveList, ALL);
+    }
+
+    /**
+     * Generates the legal captures, en passant captures and promotions (all four promotion pieces, capturing or not).
+     * In check these are the evasions that capture the checker, plus the king captures and the promotions that block.
+     *
+     * @param pos      The current chess position.
+     * @param moveList The list to store the generated moves.
+     */
+    public static void createCaptures(@NotNull Position pos, @NotNull MoveListInterface moveList) {
+        generate(pos, moveList, CAPTURES);
+    }
+
+    /**
+     * Generates the legal moves that {@link #createCaptures} leaves out: non-capturing piece and king moves,
+     * non-promoting pawn pushes and castling. Together both stages give exactly {@link #createAll}.
+     *
+     * @param pos      The current chess position.
+     * @param moveList The list to store the generated moves.
+     */
+    public static void createQuiets(@NotNull Position pos, @NotNull MoveListInterface moveList) {
+        generate(pos, moveList, QUIETS);
+    }
+
+    /**
+     * Generates the legal moves out of check: king moves, captures of a single checker and blocks.
+     *
+     * @param pos      The current chess position, the side to move must be in check.
+     * @param moveList The list to store the generated moves.
+     */
+    public static void createEvasions(@NotNull Position pos, @NotNull MoveListInterface moveList) {
+        assert pos.inCheck() : "evasions are only generated in check\n" + pos.posString();
+        // the check mask of the generator already limits every move to the evasions
+        generate(pos, moveList, ALL);
+    }
+
+    /**
+     * Generates the quiet moves (as in {@link #createQuiets}, but without castling) that give check,
+     * directly or by discovering a slider on the enemy king.
+     *
+     * @param pos      The current chess position, the side to move must not be in check.
+     * @param moveList The list to store the generated moves.
+     */
+    public static void createQuietChecks(@NotNull Position pos, @NotNull MoveListInterface moveList) {
+        assert !pos.inCheck() : "quiet checks are not generated in check\n" + pos.posString();
+        generate(pos, new QuietCheckFilter(pos, moveList), QUIET_CHECKS);
+    }
+
+    /**
+     * Generates the legal moves of the given stages, using the pin mask and the check mask of the position state.
+     *
+     * @param pos      The current chess position.
+     * @param moveList The list to store the generated moves.
+     * @param stages   {@link #CAPTURES}, {@link #QUIETS} or both; {@link #NO_CASTLING} leaves castling out of the quiets.
+     */
+    static void generate(@NotNull Position pos, @NotNull MoveListInterface moveList, int stages) {
         int side = pos.sideToMove();
         int enemySide = Side.flipped(side);
         int kSq = pos.getState().kingSquare;
         long occupancy = pos.occupancy();
         long enemy = pos.occupancyBySide(enemySide);
         long empty = ~occupancy;
-        long enemyOrEmpty = enemy | empty;
+        // squares the non-pawn moves of these stages may go to
+        long targets = ((stages & CAPTURES) != 0 ? enemy : 0) | ((stages & QUIETS) != 0 ? empty : 0);
         PositionState state = pos.getState();
 
         // King moves
-        long attacksKing = attacks(KING, state.kingSquare) & enemyOrEmpty;
+        long attacksKing = attacks(KING, state.kingSquare) & targets & ~pos.enemyAttacks();
         for (; attacksKing != 0; attacksKing &= (attacksKing - 1)) {
-            int dest = lsbToSquare(attacksKing);
-            if (pos.attackersBB(enemySide, dest, occupancy ^ squareToBB(kSq)) == 0)
-                moveList.add(Move.create(kSq, dest));
+            moveList.add(Move.create(kSq, lsbToSquare(attacksKing)));
         }
 
         // In double check, only king can move
@@ -117,9 +359,11 @@ public class MoveGenerator {
             return;
 //            return moveList;
 
+        long checker = state.checkers;
+
         // Castling
         int allCastling = allCastling(side) & state.castlingRights;
-        if (allCastling != 0) {
+        if (allCastling != 0 && checker == 0 && (stages & (QUIETS | NO_CASTLING)) == QUIETS) {
             if ((allCastling & Castling.ALL_SHORT) != 0) {
                 int move = pos.castlingMove(allCastling & Castling.ALL_SHORT);
                 if (pos.isLegalCastlingMove(move))
@@ -132,7 +376,6 @@ public class MoveGenerator {
             }
         }
 
-        long checker = state.checkers;
         long pinMask = state.pinMask;
         long pinMaskDiagonals = pinMask & bishopAttacks(kSq);
         long pinMaskRankFile = pinMask & rookAttacks(kSq);
@@ -141,167 +384,255 @@ public class MoveGenerator {
         long checkMask = checker == 0 ? FULL_BB : pathBetween(kSq, lsbToSquare(checker));
 
         // Pawn moves
-        createPawnsMove(pos, moveList, side, enemySide, kSq, enemy, empty, pinMaskDiagonals, pinMaskRankFile, checkMask);
+        if (side == WHITE)
+            createWhitePawnsMove(pos, moveList, kSq, enemy, empty, pinMaskDiagonals, pinMaskRankFile, checkMask, stages);
+        else
+            createBlackPawnsMove(pos, moveList, kSq, enemy, empty, pinMaskDiagonals, pinMaskRankFile, checkMask, stages);
 
         // Rest of the pieces
-        checkMask &= enemyOrEmpty;
+        checkMask &= targets;
 
         // Knights
-        createSliderMoves(moveList, Bitboard::knightAttacks, checkMask,
-                pos.occupancyBySideAndType(side, KNIGHT) & ~pinMask);
+        createKnightMoves(moveList, checkMask, pos.occupancyBySideAndType(side, KNIGHT) & ~pinMask);
 
         // Rooks and queen
         long rookQueen = pos.occupancyBySideAndType(side, ROOK, QUEEN);
 
         // Rooks pin
-        createSliderMoves(moveList, square -> rookAttacks(square, occupancy),
-                checkMask & pinMaskRankFile, rookQueen & pinMaskRankFile);
+        createRookMoves(moveList, occupancy, checkMask & pinMaskRankFile, rookQueen & pinMaskRankFile);
 
         // Rooks not pin
-        createSliderMoves(moveList, square -> rookAttacks(square, occupancy), checkMask, rookQueen & ~pinMask);
+        createRookMoves(moveList, occupancy, checkMask, rookQueen & ~pinMask);
 
         // Bishop and queen
         long bishopsQueen = pos.occupancyBySideAndType(side, BISHOP, QUEEN);
 
         // Bishop pin
-        createSliderMoves(moveList, square -> bishopAttacks(square, occupancy),
-                checkMask & pinMaskDiagonals, bishopsQueen & pinMaskDiagonals);
+        createBishopMoves(moveList, occupancy, checkMask & pinMaskDiagonals, bishopsQueen & pinMaskDiagonals);
 
         // Bishops not pin
-        createSliderMoves(moveList, square -> bishopAttacks(square, occupancy),
-                checkMask, bishopsQueen & ~pinMask);
+        createBishopMoves(moveList, occupancy, checkMask, bishopsQueen & ~pinMask);
 
     }
 
 
     /**
-     * Generates pawn moves for a given side in the position, considering special cases like promotions and en passant.
+     * Generates the white pawn moves, considering special cases like promotions and en passant.
+     * The directions and ranks are constants here, so there is no side branch in the generation loops.
      *
      * @param pos            The current chess position.
      * @param moveList       The list to store the generated moves.
-     * @param side           The side for which pawn moves are generated.
-     * @param enemySide      The opponent side.
      * @param kSq            The square of the king.
      * @param enemy          Bitboard representing positions occupied by the opponent's pieces.
      * @param empty          Bitboard representing empty squares on the board.
      * @param pinMaskDiagonals Bitboard representing squares where pinned pieces can move diagonally.
      * @param pinMaskRankFile Bitboard representing squares where pinned pieces can move along ranks and files.
      * @param checkMask      Bitboard representing squares under attack.
+     * @param stages         The generation stages: captures and promotions, quiet pushes, or both.
      */
-    private static void createPawnsMove(@NotNull Position pos, @NotNull MoveListInterface moveList, int side, int enemySide,
-                                        int kSq, long enemy, long empty, long pinMaskDiagonals, long pinMaskRankFile,
-                                        long checkMask) {
-        long pawns = pos.occupancyBySideAndType(side, PAWN);
+    private static void createWhitePawnsMove(@NotNull Position pos, @NotNull MoveListInterface moveList, int kSq,
+                                             long enemy, long empty, long pinMaskDiagonals, long pinMaskRankFile,
+                                             long checkMask, int stages) {
+        long pawns = pos.occupancyBySideAndType(WHITE, PAWN);
         long pinOnLeftD = pinMaskDiagonals & Bitboard.leftDiagonal(kSq);
         long pinOnRightD = pinMaskDiagonals & Bitboard.rightDiagonal(kSq);
 
         long lrPawns = pawns & ~pinMaskRankFile;
         long pPawns = pawns & ~pinMaskDiagonals & ~(pinMaskRankFile & rankBB(Square.rank(kSq)));
 
-        // Variables to store different types of pawn moves
-        long leftPawns, rightPawns, pushP, push2P, rankToPromote;
-        int up, upRight, upLeft; // side - relative  directions.
+        long leftPawns = lrPawns & ~pinOnRightD & shiftDownRight(checkMask & enemy);
+        long rightPawns = lrPawns & ~pinOnLeftD & shiftDownLeft(checkMask & enemy);
+        long pushP = pPawns & shiftDown(empty);
+        long push2P = pushP & RANK_2_BB & Bitboard.shiftDownTwice(empty & checkMask);
+        pushP &= shiftDown(checkMask);
 
-        // Set variables based on the side's perspective
-        if (side == WHITE) { // direction from white perspective
-            rankToPromote = RANK_7_BB;
-            up = UP;
-            upRight = UP_RIGHT;
-            upLeft = UP_LEFT;
+        int start;
 
-            leftPawns = lrPawns & ~pinOnRightD & shiftDownRight(checkMask & enemy);
-            rightPawns = lrPawns & ~pinOnLeftD & shiftDownLeft(checkMask & enemy);
-            pushP = pPawns & shiftDown(empty);
-            push2P = pushP & RANK_2_BB & Bitboard.shiftDownTwice(empty & checkMask);
-            pushP &= shiftDown(checkMask);
-        } else { // direction from black perspective
-            rankToPromote = RANK_2_BB;
-            up = DOWN;
-            upRight = DOWN_LEFT;
-            upLeft = DOWN_RIGHT;
+        if ((stages & CAPTURES) != 0) {
+            createEnPassantMoves(pos, moveList, BLACK, lrPawns);
 
-            leftPawns = lrPawns & ~pinOnRightD & shiftUpLeft(checkMask & enemy);
-            rightPawns = lrPawns & ~pinOnLeftD & shiftUpRight(checkMask & enemy);
+            // Handle pawn promotions
+            if (((leftPawns | rightPawns | pushP) & RANK_7_BB) != 0) {
+                long lPromotePawns = leftPawns & RANK_7_BB;
+                long rPromotePawns = rightPawns & RANK_7_BB;
+                long pPromotePawns = pushP & RANK_7_BB;
 
-            pushP = pPawns & shiftUp(empty);
-            push2P = pushP & RANK_7_BB & Bitboard.shiftUpTwice(empty & checkMask);
-            pushP &= shiftUp(checkMask);
+                leftPawns ^= lPromotePawns;
+                rightPawns ^= rPromotePawns;
+
+                createPromoteMoves(moveList, UP_LEFT, lPromotePawns);
+                createPromoteMoves(moveList, UP_RIGHT, rPromotePawns);
+                createPromoteMoves(moveList, UP, pPromotePawns);
+            }
+
+            // Generate normal pawn captures
+            for (; leftPawns != 0; leftPawns &= (leftPawns - 1)) {
+                start = lsbToSquare(leftPawns);
+                moveList.add(Move.create(start, start + UP_LEFT, NORMAL_PAWN_MOVE));
+            }
+            for (; rightPawns != 0; rightPawns &= (rightPawns - 1)) {
+                start = lsbToSquare(rightPawns);
+                moveList.add(Move.create(start, start + UP_RIGHT, NORMAL_PAWN_MOVE));
+            }
         }
 
-        int move, start;
+        if ((stages & QUIETS) != 0) {
+            // Generate normal pawn pushes (the promoting pushes belong to the captures stage)
+            for (pushP &= ~RANK_7_BB; pushP != 0; pushP &= (pushP - 1)) {
+                start = lsbToSquare(pushP);
+                moveList.add(Move.create(start, start + UP, NORMAL_PAWN_MOVE));
+            }
 
-        // Handle en passant
-        int enPassantSq = pos.enPassant();
-        if (enPassantSq != NULL_SQUARE) {
-            long epPawns = lrPawns & pawnAttacks(enemySide, enPassantSq);
-            for (; epPawns != 0; epPawns &= (epPawns - 1)) {
-                if (pos.isLegalEnPassantMove(move = Move.create(lsbToSquare(epPawns), enPassantSq, EN_PASSANT)))
-                    moveList.add(move);
+            // Generate pawn moves with double push
+            for (; push2P != 0; push2P &= (push2P - 1)) {
+                start = lsbToSquare(push2P);
+                moveList.add(Move.create(start, start + 2 * UP, PAWN_PUSH_TWICE));
             }
         }
+    }
+
+    /**
+     * Generates the black pawn moves, considering special cases like promotions and en passant.
+     * The directions and ranks are constants here, so there is no side branch in the generation loops.
+     *
+     * @param pos            The current chess position.
+     * @param moveList       The list to store the generated moves.
+     * @param kSq            The square of the king.
+     * @param enemy          Bitboard representing positions occupied by the opponent's pieces.
+     * @param empty          Bitboard representing empty squares on the board.
+     * @param pinMaskDiagonals Bitboard representing squares where pinned pieces can move diagonally.
+     * @param pinMaskRankFile Bitboard representing squares where pinned pieces can move along ranks and files.
+     * @param checkMask      Bitboard representing squares under attack.
+     * @param stages         The generation stages: captures and promotions, quiet pushes, or both.
+     */
+    private static void createBlackPawnsMove(@NotNull Position pos, @NotNull MoveListInterface moveList, int kSq,
+                                             long enemy, long empty, long pinMaskDiagonals, long pinMaskRankFile,
+                                             long checkMask, int stages) {
+        long pawns = pos.occupancyBySideAndType(BLACK, PAWN);
+        long pinOnLeftD = pinMaskDiagonals & Bitboard.leftDiagonal(kSq);
+        long pinOnRightD = pinMaskDiagonals & Bitboard.rightDiagonal(kSq);
 
-        // Handle pawn promotions
-        if (((leftPawns | rightPawns | pushP) & rankToPromote) != 0) {
-            long lPromotePawns = leftPawns & rankToPromote;
-            long rPromotePawns = rightPawns & rankToPromote;
-            long pPromotePawns = pushP & rankToPromote;
+        long lrPawns = pawns & ~pinMaskRankFile;
+        long pPawns = pawns & ~pinMaskDiagonals & ~(pinMaskRankFile & rankBB(Square.rank(kSq)));
 
-            leftPawns ^= lPromotePawns;
-            rightPawns ^= rPromotePawns;
-            pushP ^= pPromotePawns;
+        long leftPawns = lrPawns & ~pinOnRightD & shiftUpLeft(checkMask & enemy);
+        long rightPawns = lrPawns & ~pinOnLeftD & shiftUpRight(checkMask & enemy);
+        long pushP = pPawns & shiftUp(empty);
+        long push2P = pushP & RANK_7_BB & Bitboard.shiftUpTwice(empty & checkMask);
+        pushP &= shiftUp(checkMask);
 
-            createPromoteMoves(moveList, upLeft, lPromotePawns);
-            createPromoteMoves(moveList, upRight, rPromotePawns);
-            createPromoteMoves(moveList, up, pPromotePawns);
-        }
+        int start;
 
-        // Generate normal pawn moves
-        for (; leftPawns != 0; leftPawns &= (leftPawns - 1)) {
-            start = lsbToSquare(leftPawns);
-            moveList.add(Move.create(start, start + upLeft, NORMAL_PAWN_MOVE));
-        }
-        for (; rightPawns != 0; rightPawns &= (rightPawns - 1)) {
-            start = lsbToSquare(rightPawns);
-            moveList.add(Move.create(start, start + upRight, NORMAL_PAWN_MOVE));
-        }
-        for (; pushP != 0; pushP &= (pushP - 1)) {
-            start = lsbToSquare(pushP);
-            moveList.add(Move.create(start, start + up, NORMAL_PAWN_MOVE));
+        if ((stages & CAPTURES) != 0) {
+            createEnPassantMoves(pos, moveList, WHITE, lrPawns);
+
+            // Handle pawn promotions
+            if (((leftPawns | rightPawns | pushP) & RANK_2_BB) != 0) {
+                long lPromotePawns = leftPawns & RANK_2_BB;
+                long rPromotePawns = rightPawns & RANK_2_BB;
+                long pPromotePawns = pushP & RANK_2_BB;
+
+                leftPawns ^= lPromotePawns;
+                rightPawns ^= rPromotePawns;
+
+                createPromoteMoves(moveList, DOWN_RIGHT, lPromotePawns);
+                createPromoteMoves(moveList, DOWN_LEFT, rPromotePawns);
+                createPromoteMoves(moveList, DOWN, pPromotePawns);
+            }
+
+            // Generate normal pawn captures
+            for (; leftPawns != 0; leftPawns &= (leftPawns - 1)) {
+                start = lsbToSquare(leftPawns);
+                moveList.add(Move.create(start, start + DOWN_RIGHT, NORMAL_PAWN_MOVE));
+            }
+            for (; rightPawns != 0; rightPawns &= (rightPawns - 1)) {
+                start = lsbToSquare(rightPawns);
+                moveList.add(Move.create(start, start + DOWN_LEFT, NORMAL_PAWN_MOVE));
+            }
         }
 
-        // Generate pawn moves with double push
-        for (; push2P != 0; push2P &= (push2P - 1)) {
-            start = lsbToSquare(push2P);
-            moveList.add(Move.create(start, start + 2 * up, PAWN_PUSH_TWICE));
+        if ((stages & QUIETS) != 0) {
+            // Generate normal pawn pushes (the promoting pushes belong to the captures stage)
+            for (pushP &= ~RANK_2_BB; pushP != 0; pushP &= (pushP - 1)) {
+                start = lsbToSquare(pushP);
+                moveList.add(Move.create(start, start + DOWN, NORMAL_PAWN_MOVE));
+            }
+
+            // Generate pawn moves with double push
+            for (; push2P != 0; push2P &= (push2P - 1)) {
+                start = lsbToSquare(push2P);
+                moveList.add(Move.create(start, start + 2 * DOWN, PAWN_PUSH_TWICE));
+            }
         }
     }
 
+    /**
+     * Generates the legal en passant captures.
+     *
+     * @param pos       The current chess position.
+     * @param moveList  The list to store the generated moves.
+     * @param enemySide The opponent side.
+     * @param lrPawns   The pawns that are not pinned along a rank or file.
+     */
+    private static void createEnPassantMoves(@NotNull Position pos, @NotNull MoveListInterface moveList, int enemySide,
+                                             long lrPawns) {
+        int enPassantSq = pos.enPassant();
+        if (enPassantSq != NULL_SQUARE) {
+            int move;
+            long epPawns = lrPawns & pawnAttacks(enemySide, enPassantSq);
+            for (; epPawns != 0; epPawns &= (epPawns - 1)) {
+                if (pos.isLegalEnPassantMove(move = Move.create(lsbToSquare(epPawns), enPassantSq, EN_PASSANT)))
+                    moveList.add(move);
+            }
+        }
+    }
 
     /**
-     * Creates slider moves for a given piece type, targeting specific squares and considering occupied squares.
+     * Creates knight moves to the target squares.
      *
-     * @param moveList    The list to store the generated moves.
-     * @param attacksFunc The function providing the attack bitboard for a given square.
-     * @param target      The target squares for the moves.
-     * @param pieces      The bitboard representing the positions of the pieces.
+     * @param moveList The list to store the generated moves.
+     * @param target   The target squares for the moves.
+     * @param knights  The bitboard representing the positions of the knights.
      */
-    private static void createSliderMoves(@NotNull MoveListInterface moveList, Function<Integer,
-            Long> attacksFunc, long target, long pieces) {
-        int start, dest;
+    private static void createKnightMoves(@NotNull MoveListInterface moveList, long target, long knights) {
+        for (; knights != 0; knights &= (knights - 1)) {
+            int start = lsbToSquare(knights);
+            for (long attacks = knightAttacks(start) & target; attacks != 0; attacks &= (attacks - 1)) {
+                moveList.add(Move.create(start, lsbToSquare(attacks)));
+            }
+        }
+    }
 
-        // Iterate through all pieces
+    /**
+     * Creates rook-like moves (rooks and queens along ranks and files) to the target squares.
+     *
+     * @param moveList  The list to store the generated moves.
+     * @param occupancy The occupied squares, blocking the rays.
+     * @param target    The target squares for the moves.
+     * @param pieces    The bitboard representing the positions of the pieces.
+     */
+    private static void createRookMoves(@NotNull MoveListInterface moveList, long occupancy, long target, long pieces) {
         for (; pieces != 0; pieces &= (pieces - 1)) {
-            start = lsbToSquare(pieces);
-
-            // Calculate attacks for the current piece
-            long attacks = attacksFunc.apply(start) & target;
-
-            // Iterate through all valid attack squares
-            for (; attacks != 0; attacks &= (attacks - 1)) {
-                dest = lsbToSquare(attacks);
+            int start = lsbToSquare(pieces);
+            for (long attacks = rookAttacks(start, occupancy) & target; attacks != 0; attacks &= (attacks - 1)) {
+                moveList.add(Move.create(start, lsbToSquare(attacks)));
+            }
+        }
+    }
 
-                // Add the move to the move list
-                moveList.add(Move.create(start, dest));
+    /**
+     * Creates bishop-like moves (bishops and queens along diagonals) to the target squares.
+     *
+     * @param moveList  The list to store the generated moves.
+     * @param occupancy The occupied squares, blocking the rays.
+     * @param target    The target squares for the moves.
+     * @param pieces    The bitboard representing the positions of the pieces.
+     */
+    private static void createBishopMoves(@NotNull MoveListInterface moveList, long occupancy, long target, long pieces) {
+        for (; pieces != 0; pieces &= (pieces - 1)) {
+            int start = lsbToSquare(pieces);
+            for (long attacks = bishopAttacks(start, occupancy) & target; attacks != 0; attacks &= (attacks - 1)) {
+                moveList.add(Move.create(start, lsbToSquare(attacks)));
             }
         }
     }
@@ -342,43 +673,33 @@ public class MoveGenerator {
     public static void perft(Position pos, int depth) {
         // Record the start time to measure the execution time
         long startTime = System.nanoTime();
+        printPerft(divide(pos, depth), startTime);
+    }
 
-        // Base case: If the depth is less than or equal to 0, return without further computation
-        if (depth <= 0) return;
-
-
-        // Create a MoveList containing all legal moves for the current position
-        MoveList moveList = new MoveList(pos);
-
-        // Initialize counters for nodes and the count of moves at each depth
-        long nodes = 0, count;
-        int step = 0;
-        // Iterate through all moves in the MoveList
-        for (int move : moveList) {
-//            if (step++ > 0){
-//                break;
-//            }
-            // If the depth is greater than 1, recursively explore the moves at the next depth
-            if (depth > 1) {
-                pos.makeMove(move);    // Make the move
-
-                count = numMoves(pos, depth - 1);  // Recursive call for the next depth
-                pos.undoMove();           // Undo the move to explore other moves
-            } else {
-                // If depth is 1, simply count the number of legal moves at this depth
-                count = 1;
-            }
+    /**
+     * Same as {@link #perft(Position, int)} but counts the subtrees on the common fork/join pool.
+     *
+     * @param pos   The current chess position.
+     * @param depth The depth of the perft search.
+     */
+    public static void parallelPerft(Position pos, int depth) {
+        long startTime = System.nanoTime();
+        printPerft(parallelDivide(pos, depth), startTime);
+    }
 
-            // Accumulate the count of moves
-            nodes += count;
+    private static void printPerft(Map<String, Long> divide, long startTime) {
+        // Base case: If the depth is less than or equal to 0, there is nothing to print
+        if (divide.isEmpty()) return;
 
+        long nodes = 0;
+        for (Map.Entry<String, Long> entry : divide.entrySet()) {
+            nodes += entry.getValue();
             // Print the move and the count of moves at the current depth
-            System.out.println(Move.getName(move) + ": " + count);
+            System.out.println(entry.getKey() + ": " + entry.getValue());
         }
 
         // Record the end time to calculate the elapsed time
-        long endTime = System.nanoTime();
-        long elapsedTime = endTime - startTime;
+        long elapsedTime = System.nanoTime() - startTime;
         double elapsedSeconds = (double) elapsedTime / 1_000_000_000.0; // Convert to seconds
 
         // Print the total nodes and the elapsed time
@@ -386,6 +707,101 @@ public class MoveGenerator {
         System.out.println("Time: " + elapsedSeconds + "\n");
     }
 
+    /**
+     * Counts the perft nodes below every legal move of the position (the "divide" of perft).
+     *
+     * @param pos   The current chess position.
+     * @param depth The depth of the perft search.
+     * @return Map from move name to the number of nodes under that move, in move generation order.
+     * Empty if depth is less than or equal to 0.
+     */
+    public static Map<String, Long> divide(Position pos, int depth) {
+        Map<String, Long> result = new LinkedHashMap<>();
+        if (depth <= 0) return result;
+
+        MoveList moveList = new MoveList(pos);
+        for (int i = 0; i < moveList.size(); i++) {
+            int move = moveList.get(i);
+            pos.makeMove(move);
+            result.put(Move.getName(move), numMoves(pos, depth - 1));
+            pos.undoMove();
+        }
+        return result;
+    }
+
+    /**
+     * Parallel version of {@link #divide(Position, int)} on the common fork/join pool.
+     *
+     * @param pos   The current chess position (not modified).
+     * @param depth The depth of the perft search.
+     * @return Map from move name to the number of nodes under that move, in move generation order.
+     */
+    public static Map<String, Long> parallelDivide(Position pos, int depth) {
+        return parallelDivide(pos, depth, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Parallel version of {@link #divide(Position, int)}.
+     * The work is split at the root and at the shallow plies of the tree; every worker counts its
+     * subtrees on its own {@link Position}, so the result is exactly the same as the sequential divide.
+     *
+     * @param pos   The current chess position (not modified).
+     * @param depth The depth of the perft search.
+     * @param pool  The pool that runs the perft tasks.
+     * @return Map from move name to the number of nodes under that move, in move generation order.
+     */
+    public static Map<String, Long> parallelDivide(Position pos, int depth, ForkJoinPool pool) {
+        return parallelDivide(pos, depth, pool, null);
+    }
+
+    /**
+     * Parallel version of {@link #divide(Position, int)} where all workers share one perft hash table.
+     *
+     * @param pos   The current chess position (not modified).
+     * @param depth The depth of the perft search.
+     * @param pool  The pool that runs the perft tasks.
+     * @param table The shared transposition table, or null to count without one.
+     * @return Map from move name to the number of nodes under that move, in move generation order.
+     */
+    public static Map<String, Long> parallelDivide(Position pos, int depth, ForkJoinPool pool, PerftHashTable table) {
+        Map<String, Long> result = new LinkedHashMap<>();
+        if (depth <= 0) return result;
+
+        List<PerftTask> children = pool.invoke(ForkJoinTask.adapt(() -> PerftTask.forkChildren(pos, depth, 0, table)));
+        for (PerftTask child : children) {
+            result.put(Move.getName(child.move()), child.join());
+        }
+        return result;
+    }
+
+    /**
+     * Parallel version of {@link #numMoves(Position, int)} on the common fork/join pool.
+     *
+     * @param pos   The current chess position (not modified).
+     * @param depth The depth of the search.
+     * @return The number of leaf nodes at the given depth.
+     */
+    public static long parallelNumMoves(Position pos, int depth) {
+        return parallelNumMoves(pos, depth, null);
+    }
+
+    /**
+     * Parallel version of {@link #numMoves(Position, int, PerftHashTable)} on the common fork/join pool.
+     *
+     * @param pos   The current chess position (not modified).
+     * @param depth The depth of the search.
+     * @param table The shared transposition table, or null to count without one.
+     * @return The number of leaf nodes at the given depth.
+     */
+    public static long parallelNumMoves(Position pos, int depth, PerftHashTable table) {
+        if (depth == 0) return 1;
+        long nodes = 0;
+        for (long count : parallelDivide(pos, depth, ForkJoinPool.commonPool(), table).values()) {
+            nodes += count;
+        }
+        return nodes;
+    }
+
     /**
      * Helper method for counting the number of moves at a given depth.
      *
@@ -396,9 +812,6 @@ public class MoveGenerator {
     public static long numMoves2(Position pos, int depth) {
         if (depth <= 0) return 0;
 
-        // Initialize a new PositionState to keep track of the position state during the search
-        PositionState state = new PositionState();
-
         // Initialize counters for the total number of moves and the count at each depth
         long nodes = 0;
 
@@ -433,25 +846,59 @@ public class MoveGenerator {
     }
 
     public static long numMoves(Position pos, int depth) {
+        return numMoves(pos, depth, MoveListStack.forCurrentThread(), 0);
+    }
+
+    private static long numMoves(Position pos, int depth, MoveListStack lists, int ply) {
         // Base: perft convention is depth==0 -> 1 node (the current position)
         if (depth == 0) return 1;
 
-        long nodes = 0;
-        MoveList moveList = new MoveList(pos);
-
+        // leaves are counted without generating them
         if (depth == 1) {
-            return moveList.size();
+            return countLegalMoves(pos);
         }
 
-        for (int move : moveList) {
-            // Create or reuse a state snapshot for THIS ply
-            PositionState st = new PositionState(); // or from a preallocated pool/stack
+        MoveList moveList = lists.get(ply).generate(pos);
+        long nodes = 0;
+        for (int i = 0; i < moveList.size(); i++) {
+            pos.makeMove(moveList.get(i));   // reuses the position's preallocated state for this ply
+            nodes += numMoves(pos, depth - 1, lists, ply + 1);
+            pos.undoMove();
+        }
+
+        return nodes;
+    }
+
+    /**
+     * Same as {@link #numMoves(Position, int)}, but looks up and stores subtree counts in a perft hash table,
+     * so transpositions are counted only once. The table may be shared with other threads.
+     *
+     * @param pos   The current chess position.
+     * @param depth The depth of the search.
+     * @param table The transposition table, or null to count without one.
+     * @return The number of leaf nodes at the given depth.
+     */
+    public static long numMoves(Position pos, int depth, PerftHashTable table) {
+        return numMoves(pos, depth, table, MoveListStack.forCurrentThread(), 0);
+    }
+
+    private static long numMoves(Position pos, int depth, PerftHashTable table, MoveListStack lists, int ply) {
+        // depth 1 is a plain move count, cheaper than a table lookup
+        if (table == null || depth <= 1) return numMoves(pos, depth, lists, ply);
+
+        long key = pos.getState().key;
+        long nodes = table.probe(key, depth);
+        if (nodes >= 0) return nodes;
 
-            pos.makeMove(move, st);   // <-- pass state
-            nodes += numMoves(pos, depth - 1);
-            pos.undoMove();   // <-- use the same state
+        nodes = 0;
+        MoveList moveList = lists.get(ply).generate(pos);
+        for (int i = 0; i < moveList.size(); i++) {
+            pos.makeMove(moveList.get(i));
+            nodes += numMoves(pos, depth - 1, table, lists, ply + 1);
+            pos.undoMove();
         }
 
+        table.store(key, depth, nodes);
         return nodes;
     }
 
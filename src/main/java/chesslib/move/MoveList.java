@@ -6,8 +6,17 @@ import org.jetbrains.annotations.NotNull;
 
 import java.util.Arrays;
 import java.util.Iterator;
-import java.util.function.Function;
+import java.util.Objects;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
 
+/**
+ * Fixed-capacity list of encoded moves.
+ * <p>
+ * Prefer the primitive accessors ({@link #get(int)}, {@link #forEachMove(IntConsumer)}, {@link #stream()})
+ * over the {@code Iterable<Integer>} view, which boxes every move. A list can be reused with {@link #clear()};
+ * see {@link MoveListStack} for a per-thread stack of reusable lists indexed by ply.
+ */
 public class MoveList implements Iterable<Integer>, MoveListInterface{
     private static final int MAX_MOVES = 218; // https://www.chess.com/forum/view/fun-with-chess/what-chess-position-has-the-most-number-of-possible-moves?page=2
     private  int size = 0;
@@ -44,5 +53,55 @@ public class MoveList implements Iterable<Integer>, MoveListInterface{
         moveList[size++] = move;
     }
 
-}
+    /**
+     * @param index index of the move, between 0 and {@code size() - 1}
+     * @return the encoded move at the given index
+     */
+    public int get(int index) {
+        return moveList[Objects.checkIndex(index, size)];
+    }
+
+    /**
+     * Removes all moves, so the list can be filled again.
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Removes all moves and fills the list with the legal moves of the given position.
+     *
+     * @param position the position to generate the moves for
+     * @return this list
+     */
+    public MoveList generate(Position position) {
+        size = 0;
+        MoveGenerator.createAll(position, this);
+        return this;
+    }
 
+    /**
+     * Performs the given action for each move, without boxing. Not an overload of {@code forEach}, so a lambda
+     * passed to {@link Iterable#forEach} stays unambiguous.
+     */
+    public void forEachMove(IntConsumer action) {
+        for (int i = 0; i < size; i++) {
+            action.accept(moveList[i]);
+        }
+    }
+
+    /**
+     * @return a new array holding the moves of this list
+     */
+    public int[] toArray() {
+        return Arrays.copyOf(moveList, size);
+    }
+
+    /**
+     * @return a primitive stream over the moves of this list. The list must not be changed while the stream is used.
+     */
+    public IntStream stream() {
+        return Arrays.stream(moveList, 0, size);
+    }
+
+}
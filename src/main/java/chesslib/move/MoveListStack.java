@@ -0,0 +1,49 @@
+package chesslib.move;
+
+import java.util.Arrays;
+
+/**
+ * Stack of reusable {@link MoveList}s indexed by ply, for walking a game tree without allocating a list per node.
+ * <p>
+ * A stack is not thread safe; {@link #forCurrentThread()} gives every thread its own one. The list of a ply is only
+ * valid until the same ply is requested again, so a recursive walk uses {@code get(ply)} at its node and
+ * {@code get(ply + 1)} at the children.
+ */
+public class MoveListStack {
+    private static final int INITIAL_SIZE = 64;
+    private static final ThreadLocal<MoveListStack> STACKS = ThreadLocal.withInitial(MoveListStack::new);
+
+    private MoveList[] lists = new MoveList[INITIAL_SIZE];
+
+    public MoveListStack() {
+        for (int i = 0; i < lists.length; i++) {
+            lists[i] = new MoveList();
+        }
+    }
+
+    /**
+     * @return the stack owned by the calling thread
+     */
+    public static MoveListStack forCurrentThread() {
+        return STACKS.get();
+    }
+
+    /**
+     * Returns the cleared list of the given ply, growing the stack if needed.
+     *
+     * @param ply distance from the root of the walk, at least 0
+     * @return an empty move list owned by this stack
+     */
+    public MoveList get(int ply) {
+        if (ply >= lists.length) {
+            int oldLength = lists.length;
+            lists = Arrays.copyOf(lists, Math.max(ply + 1, oldLength * 2));
+            for (int i = oldLength; i < lists.length; i++) {
+                lists[i] = new MoveList();
+            }
+        }
+        MoveList list = lists[ply];
+        list.clear();
+        return list;
+    }
+}
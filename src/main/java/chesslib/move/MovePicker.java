@@ -0,0 +1,96 @@
+package chesslib.move;
+
+import chesslib.Position;
+import org.jetbrains.annotations.NotNull;
+
+import static chesslib.move.Move.NULL_MOVE;
+
+/**
+ * Lazy staged move picker: hands out the legal moves of a position one by one, generating each stage
+ * (captures, then quiet moves or quiet checks) only when the previous one is used up.
+ * A search that cuts off after a capture therefore never pays for generating the quiet moves.
+ * In check, the only stage is the evasions.
+ * <p>
+ * The position must not change between calls to {@link #next()}, except for moves that are undone again.
+ */
+public class MovePicker {
+
+    /**
+     * Which moves the picker produces when the side to move is not in check.
+     */
+    public enum Mode {
+        /** Captures and promotions first, then every quiet move. */
+        ALL,
+        /** Captures and promotions only, e.g. for quiescence search. */
+        CAPTURES,
+        /** Captures and promotions, then the quiet moves that give check. */
+        CAPTURES_AND_CHECKS
+    }
+
+    private static final int STAGE_EVASIONS = 0;
+    private static final int STAGE_CAPTURES = 1;
+    private static final int STAGE_QUIETS = 2;
+    private static final int STAGE_QUIET_CHECKS = 3;
+    private static final int STAGE_DONE = 4;
+
+    private final Position pos;
+    private final Mode mode;
+    private final MoveList moveList = new MoveList();
+    private int stage;
+    private int index;
+
+    /**
+     * Creates a picker for all legal moves.
+     */
+    public MovePicker(@NotNull Position pos) {
+        this(pos, Mode.ALL);
+    }
+
+    public MovePicker(@NotNull Position pos, @NotNull Mode mode) {
+        this.pos = pos;
+        this.mode = mode;
+        stage = pos.inCheck() ? STAGE_EVASIONS : STAGE_CAPTURES;
+        generateStage();
+    }
+
+    /**
+     * @return the next legal move, or {@link Move#NULL_MOVE} when all stages are used up
+     */
+    public int next() {
+        while (index == moveList.size()) {
+            if (!nextStage()) {
+                return NULL_MOVE;
+            }
+        }
+        return moveList.get(index++);
+    }
+
+    /**
+     * Moves to the stage after the current one and generates its moves.
+     *
+     * @return false if there is no further stage
+     */
+    private boolean nextStage() {
+        stage = switch (stage) {
+            case STAGE_CAPTURES -> mode == Mode.ALL ? STAGE_QUIETS
+                    : mode == Mode.CAPTURES_AND_CHECKS ? STAGE_QUIET_CHECKS : STAGE_DONE;
+            default -> STAGE_DONE;
+        };
+        if (stage == STAGE_DONE) {
+            return false;
+        }
+        generateStage();
+        return true;
+    }
+
+    private void generateStage() {
+        moveList.clear();
+        index = 0;
+        switch (stage) {
+            case STAGE_EVASIONS -> MoveGenerator.createEvasions(pos, moveList);
+            case STAGE_CAPTURES -> MoveGenerator.createCaptures(pos, moveList);
+            case STAGE_QUIETS -> MoveGenerator.createQuiets(pos, moveList);
+            case STAGE_QUIET_CHECKS -> MoveGenerator.createQuietChecks(pos, moveList);
+        }
+    }
+}
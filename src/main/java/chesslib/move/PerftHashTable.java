@@ -0,0 +1,106 @@
+package chesslib.move;
+
+import java.util.Arrays;
+
+/**
+ * Fixed-size transposition table for perft node counts, safe to share between perft threads without locks.
+ * <p>
+ * An entry is two longs: {@code data} and {@code key ^ data}, where {@code data} packs the node count
+ * (upper 56 bits) and the depth (lower 8 bits). A reader accepts an entry only if XOR-ing both words gives back
+ * the probed key, so an entry torn by a concurrent writer (one word new, one word old) is simply treated
+ * as a miss instead of returning a wrong count.
+ * <p>
+ * Entries are grouped in buckets of two: the first slot keeps the deepest result seen for its bucket,
+ * the second slot is always replaced. Deep subtrees (the expensive ones) therefore survive table pressure,
+ * while the recent shallow results are still cached.
+ */
+public class PerftHashTable {
+    private static final int DEPTH_BITS = 8;
+    private static final long DEPTH_MASK = (1L << DEPTH_BITS) - 1;
+    private static final int LONGS_PER_ENTRY = 2;
+    private static final int ENTRIES_PER_BUCKET = 2;
+    private static final int LONGS_PER_BUCKET = LONGS_PER_ENTRY * ENTRIES_PER_BUCKET;
+    private static final int BYTES_PER_BUCKET = Long.BYTES * LONGS_PER_BUCKET;
+
+    public static final int DEFAULT_SIZE_MB = 64;
+
+    private final long[] table;
+    private final int bucketMask;
+
+    /**
+     * Creates a table with the {@link #DEFAULT_SIZE_MB default} memory budget.
+     */
+    public PerftHashTable() {
+        this(DEFAULT_SIZE_MB);
+    }
+
+    /**
+     * Creates a table using at most {@code sizeMb} megabytes (rounded down to a power of two number of buckets).
+     *
+     * @param sizeMb the memory budget in megabytes, at least 1
+     */
+    public PerftHashTable(int sizeMb) {
+        if (sizeMb < 1 || sizeMb > 16 * 1024) {
+            throw new IllegalArgumentException("Perft hash size must be between 1 MB and 16 GB: " + sizeMb);
+        }
+        long maxBuckets = ((long) sizeMb << 20) / BYTES_PER_BUCKET;
+        // the number of buckets is a power of two, so the bucket index is a simple mask of the key
+        int buckets = (int) Math.min(Long.highestOneBit(maxBuckets), (Integer.MAX_VALUE / LONGS_PER_BUCKET + 1) / 2);
+        table = new long[buckets * LONGS_PER_BUCKET];
+        bucketMask = buckets - 1;
+    }
+
+    /**
+     * Looks up the node count of a position at a given depth.
+     *
+     * @param key   the zobrist key of the position
+     * @param depth the perft depth below the position
+     * @return the stored node count, or -1 if the table does not hold this position at this depth
+     */
+    public long probe(long key, int depth) {
+        int index = bucketIndex(key);
+        for (int slot = index; slot < index + LONGS_PER_BUCKET; slot += LONGS_PER_ENTRY) {
+            long data = table[slot];
+            if ((table[slot + 1] ^ data) == key && (data & DEPTH_MASK) == depth) {
+                return data >>> DEPTH_BITS;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Stores the node count of a position at a given depth.
+     *
+     * @param key   the zobrist key of the position
+     * @param depth the perft depth below the position
+     * @param nodes the node count (less than 2^56)
+     */
+    public void store(long key, int depth, long nodes) {
+        assert depth > 0 && depth <= DEPTH_MASK && nodes >= 0 && nodes >>> (Long.SIZE - DEPTH_BITS) == 0;
+        long data = (nodes << DEPTH_BITS) | depth;
+        int index = bucketIndex(key);
+
+        // first slot: depth preferred. second slot: always replace.
+        int slot = depth >= (table[index] & DEPTH_MASK) ? index : index + LONGS_PER_ENTRY;
+        table[slot] = data;
+        table[slot + 1] = key ^ data;
+    }
+
+    /**
+     * Removes all entries. Must not run concurrently with a perft that uses this table.
+     */
+    public void clear() {
+        Arrays.fill(table, 0);
+    }
+
+    /**
+     * @return the memory used by the entries, in bytes
+     */
+    public long sizeInBytes() {
+        return (long) table.length * Long.BYTES;
+    }
+
+    private int bucketIndex(long key) {
+        return ((int) key & bucketMask) * LONGS_PER_BUCKET;
+    }
+}
@@ -0,0 +1,89 @@
+package chesslib.move;
+
+import chesslib.Position;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Fork/join perft task: counts the leaf nodes of {@code depth} plies below its own position.
+ * <p>
+ * Every task owns its {@link Position}, so workers never share mutable board state.
+ * A task splits into one child task per legal move while it is shallow in the tree ({@code ply < MAX_SPLIT_PLY})
+ * and enough depth remains to pay for the extra position; below that it runs the sequential
+ * {@link MoveGenerator#numMoves(Position, int)}. Idle workers steal the forked subtrees, which keeps all
+ * cores busy even when the root moves have very different subtree sizes.
+ */
+class PerftTask extends RecursiveTask<Long> {
+    private static final long serialVersionUID = 1L;
+
+    // Split only the first plies of the tree: the root plus one more level gives enough tasks to balance many cores.
+    private static final int MAX_SPLIT_PLY = 2;
+    // Subtrees smaller than this are cheaper to walk than to hand to another worker.
+    private static final int MIN_SPLIT_DEPTH = 4;
+
+    private final transient Position pos;
+    private final int move;
+    private final int depth;
+    private final int ply;
+    private final transient PerftHashTable table;
+
+    /**
+     * @param pos   position owned by this task (it is modified while counting)
+     * @param move  the move that leads from the parent position to {@code pos}
+     * @param depth remaining depth to count
+     * @param ply   distance from the perft root, used to limit splitting to the shallow plies
+     * @param table shared perft hash table, or null to count without one
+     */
+    PerftTask(Position pos, int move, int depth, int ply, PerftHashTable table) {
+        this.pos = pos;
+        this.move = move;
+        this.depth = depth;
+        this.ply = ply;
+        this.table = table;
+    }
+
+    int move() {
+        return move;
+    }
+
+    @Override
+    protected Long compute() {
+        if (ply >= MAX_SPLIT_PLY || depth < MIN_SPLIT_DEPTH) {
+            return MoveGenerator.numMoves(pos, depth, table);
+        }
+
+        List<PerftTask> children = forkChildren(pos, depth, ply, table);
+        long nodes = 0;
+        for (PerftTask child : children) {
+            nodes += child.join();
+        }
+        return nodes;
+    }
+
+    /**
+     * Creates and forks one task per legal move of {@code pos}, in move generation order.
+     *
+     * @param pos   the parent position (left unchanged)
+     * @param depth remaining depth of the parent
+     * @param ply   ply of the parent
+     * @param table shared perft hash table, or null to count without one
+     * @return the forked child tasks
+     */
+    static List<PerftTask> forkChildren(Position pos, int depth, int ply, PerftHashTable table) {
+        MoveList moveList = new MoveList(pos);
+        List<PerftTask> children = new ArrayList<>(moveList.size());
+        for (int i = 0; i < moveList.size(); i++) {
+            int move = moveList.get(i);
+            Position child = pos.copy(0);
+            child.makeMove(move);
+            children.add(new PerftTask(child, move, depth - 1, ply + 1, table));
+        }
+        // fork in reverse so that the calling worker picks up the first move itself (LIFO work queue)
+        for (int i = children.size() - 1; i >= 0; --i) {
+            children.get(i).fork();
+        }
+        return children;
+    }
+}
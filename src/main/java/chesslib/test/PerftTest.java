@@ -20,7 +20,7 @@ public class PerftTest {
 
 
 
-    private static final List<String> FENS = List.of(
+    public static final List<String> FENS = List.of(
             "rnbqkbnr/pp1p1ppp/8/2pPpP2/8/8/PPP2PPP/RNBQKBNR w KQkq e6 0 1",
             "rnbqkbnr/p2p1ppp/8/2pP1P2/2pPp3/8/PP3PPP/RNBQKBNR b KQkq d3 0 1",
             "kr5r/ppp5/8/8/8/8/8/1R1RKR2 w KQ - 0 1",